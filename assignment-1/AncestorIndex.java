@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Precomputed ancestor lists for answering SAP queries without touching the graph.
+//
+// For every vertex v the index stores each ancestor a of v (v included) together with the
+// length of the shortest directed path v -> a, packed as (a << 32 | distance) and sorted by a.
+// The shortest ancestral path between v and w is then a merge-join of their two lists.
+// Hypernym DAGs are shallow, so most lists are short; a vertex with more than maxAncestors
+// ancestors is left out of the index and queries touching it report UNKNOWN, which tells
+// the caller to fall back to a graph search. The index therefore never holds more than
+// V * maxAncestors entries of 8 bytes each.
+//
+// When the graph changes, withStale() retires the lists of the vertices whose ancestors
+// changed instead of rebuilding the index; they fall back to the search like capped vertices.
+// The stale set is kept in pages of bits that versions share, so retiring a few lists copies
+// the page pointers and the pages holding them rather than a V-bit set. Vertices added to the graph after the index was built are never covered.
+final class AncestorIndex {
+
+    // returned by query() when one of the vertices isn't indexed
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final int[] offsets;
+    private final long[] entries;
+    // vertices whose lists are out of date: bit v is in word (v >>> 6) & STALE_MASK of page
+    // v >>> STALE_BITS; a null page holds no stale vertex
+    private final long[][] stale;
+
+    // vertices per page of the stale set
+    private static final int STALE_BITS = 12;
+    private static final int STALE_MASK = (1 << STALE_BITS-6)-1;
+
+    AncestorIndex(CompactDigraph G, int maxAncestors) {
+        if (G == null) throw new IllegalArgumentException("digraph is null");
+        if (maxAncestors < 1) throw new IllegalArgumentException("maxAncestors must be positive");
+
+        int n = G.V();
+        int[] dist = new int[n];
+        int[] mark = new int[n];
+        int[] queue = new int[n];
+        long[] packed = new long[Math.max(16, n)];
+        int size = 0;
+
+        this.offsets = new int[n+1];
+
+        for (int v = 0; v < n; v++) {
+            this.offsets[v] = size;
+
+            // BFS from v with a stamp per source, so the scratch arrays are never cleared
+            int stamp = v+1;
+            int head = 0;
+            int tail = 0;
+            mark[v] = stamp;
+            dist[v] = 0;
+            queue[tail++] = v;
+
+            while (head < tail && tail <= maxAncestors) {
+                int first = queue[head++];
+                for (int e = G.firstEdge(first); e < G.lastEdge(first); e++) {
+                    int nb = G.target(e);
+                    if (mark[nb] == stamp) continue;
+
+                    mark[nb] = stamp;
+                    dist[nb] = dist[first]+1;
+                    queue[tail++] = nb;
+                }
+            }
+
+            // over budget: leave the list empty, every real list contains at least v itself
+            if (tail > maxAncestors) continue;
+
+            if (size+tail > packed.length) packed = Arrays.copyOf(packed, Math.max(2*packed.length, size+tail));
+            for (int i = 0; i < tail; i++) {
+                packed[size+i] = ((long) queue[i] << 32) | dist[queue[i]];
+            }
+            Arrays.sort(packed, size, size+tail);
+            size += tail;
+        }
+
+        this.offsets[n] = size;
+        this.entries = Arrays.copyOf(packed, size);
+        this.stale = new long[(n + (1 << STALE_BITS)-1) >>> STALE_BITS][];
+    }
+
+    private AncestorIndex(int[] offsets, long[] entries, long[][] stale) {
+        this.offsets = offsets;
+        this.entries = entries;
+        this.stale = stale;
+    }
+
+    // the same index with the given vertices' lists retired as well; shares the lists and every
+    // stale page it doesn't write
+    AncestorIndex withStale(BitSet vertices) {
+        int n = this.offsets.length-1;
+        long[][] stale = this.stale.clone();
+
+        for (int v = vertices.nextSetBit(0); v >= 0 && v < n; v = vertices.nextSetBit(v+1)) {
+            int p = v >>> STALE_BITS;
+            if (stale[p] == null) stale[p] = new long[STALE_MASK+1];
+            else if (stale[p] == this.stale[p]) stale[p] = stale[p].clone();
+            stale[p][(v >>> 6) & STALE_MASK] |= 1L << v;
+        }
+        return new AncestorIndex(this.offsets, this.entries, stale);
+    }
+
+    // does the index hold an up-to-date ancestor list for v?
+    boolean covers(int v) {
+        if (v >= this.offsets.length-1) return false;
+        if (this.offsets[v+1] == this.offsets[v]) return false;
+
+        long[] page = this.stale[v >>> STALE_BITS];
+        return page == null || (page[(v >>> 6) & STALE_MASK] & 1L << v) == 0;
+    }
+
+    // number of packed entries held by the index
+    int size() {
+        return this.entries.length;
+    }
+
+    // shortest ancestral path between v and w as packed by SAP; UNKNOWN if v or w isn't indexed
+    long query(int v, int w) {
+        if (!covers(v) || !covers(w)) return UNKNOWN;
+
+        int best = Integer.MAX_VALUE;
+        int ancestor = -1;
+
+        int i = this.offsets[v];
+        int j = this.offsets[w];
+        int endI = this.offsets[v+1];
+        int endJ = this.offsets[w+1];
+
+        while (i < endI && j < endJ) {
+            int a = (int) (this.entries[i] >>> 32);
+            int b = (int) (this.entries[j] >>> 32);
+
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                int dis = (int) this.entries[i] + (int) this.entries[j];
+                if (dis < best) {
+                    best = dis;
+                    ancestor = a;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return ancestor == -1 ? SAP.NO_PATH : SAP.pack(best, ancestor);
+    }
+
+    // shortest ancestral path between any vertex in v[vFrom..vTo) and any in w[wFrom..wTo);
+    // UNKNOWN if any isn't indexed
+    long query(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        long best = SAP.NO_PATH;
+
+        for (int i = vFrom; i < vTo; i++) {
+            for (int j = wFrom; j < wTo; j++) {
+                long result = query(v[i], w[j]);
+                if (result == UNKNOWN) return UNKNOWN;
+                if (result != SAP.NO_PATH && (best == SAP.NO_PATH || SAP.lengthOf(result) < SAP.lengthOf(best))) best = result;
+            }
+        }
+
+        return best;
+    }
+
+    // shortest ancestral path between any vertex in v and any vertex in w; UNKNOWN if any isn't indexed
+    long query(Iterable<Integer> v, Iterable<Integer> w) {
+        long best = SAP.NO_PATH;
+
+        for (int a: v) {
+            for (int b: w) {
+                long result = query(a, b);
+                if (result == UNKNOWN) return UNKNOWN;
+                if (result != SAP.NO_PATH && (best == SAP.NO_PATH || SAP.lengthOf(result) < SAP.lengthOf(best))) best = result;
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,297 @@
+import edu.princeton.cs.algs4.Digraph;
+import java.util.Arrays;
+
+// Immutable digraph in compressed sparse row form. The out-neighbours of v are
+// targets[firstEdge(v)] .. targets[lastEdge(v)-1], so a traversal walks flat int arrays
+// instead of chasing Bag nodes and unboxing an Integer per edge.
+//
+// withVertex() and withEdge() return a new graph and leave this one untouched, so readers
+// holding it are never disturbed, and they cost time proportional to the change rather than
+// to V. The per-vertex offsets live in fixed-size pages that versions share: an update copies
+// the array of page pointers and the one page it writes. Versions also share the targets
+// array. A list that is full moves to the end of the used slots with room to double, so it
+// takes its next edges in place; the holes it leaves behind are squeezed out when the targets
+// array has to grow. An edge therefore costs amortized time proportional to its tail's degree.
+public final class CompactDigraph {
+
+    // vertices per page
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE-1;
+
+    // the first and last edge of v are offsets[v >>> PAGE_BITS][2*(v & PAGE_MASK)] and the int
+    // after it
+    private final int[][] offsets;
+    // the end of the slots reserved for v's list, paged like offsets with one int per vertex;
+    // a missing or null page means its lists have no room past their last edge
+    private final int[][] limits;
+    private final int[] targets;
+    // slots of targets in use by this version, holes and reserved room included
+    private final int used;
+    private final int edges;
+    private final int vertices;
+
+    // freezes a copy of G, keeping each vertex's neighbours in G's iteration order
+    public CompactDigraph(Digraph G) {
+        if (G == null) throw new IllegalArgumentException("digraph is null");
+
+        int n = G.V();
+        int[] csr = new int[n+1];
+        this.targets = new int[G.E()];
+
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            for (int w: G.adj(v)) this.targets[e++] = w;
+            csr[v+1] = e;
+        }
+        this.offsets = paged(csr, n);
+        this.limits = new int[0][];
+        this.used = e;
+        this.edges = e;
+        this.vertices = n;
+    }
+
+    // builds the graph from the first E entries of the parallel edge arrays from[] -> to[]
+    CompactDigraph(int V, int[] from, int[] to, int E) {
+        if (V < 0) throw new IllegalArgumentException("number of vertices is negative");
+
+        int[] csr = new int[V+1];
+        this.targets = new int[E];
+
+        for (int i = 0; i < E; i++) {
+            validateVertex(from[i], V);
+            validateVertex(to[i], V);
+            csr[from[i]+1]++;
+        }
+        for (int v = 0; v < V; v++) csr[v+1] += csr[v];
+
+        int[] next = Arrays.copyOf(csr, V);
+        for (int i = 0; i < E; i++) this.targets[next[from[i]]++] = to[i];
+        this.offsets = paged(csr, V);
+        this.limits = new int[0][];
+        this.used = E;
+        this.edges = E;
+        this.vertices = V;
+    }
+
+    // adopts the given CSR arrays (the out-neighbours of v are targets[offsets[v]..offsets[v+1]))
+    // after checking they are well formed
+    CompactDigraph(int[] offsets, int[] targets) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length-1] != targets.length) {
+            throw new IllegalArgumentException("malformed edge offsets");
+        }
+        for (int v = 1; v < offsets.length; v++) {
+            if (offsets[v] < offsets[v-1]) throw new IllegalArgumentException("malformed edge offsets");
+        }
+        for (int w: targets) validateVertex(w, offsets.length-1);
+
+        this.offsets = paged(offsets, offsets.length-1);
+        this.limits = new int[0][];
+        this.targets = targets;
+        this.used = targets.length;
+        this.edges = targets.length;
+        this.vertices = offsets.length-1;
+    }
+
+    private CompactDigraph(int[][] offsets, int[][] limits, int[] targets, int used, int edges, int vertices) {
+        this.offsets = offsets;
+        this.limits = limits;
+        this.targets = targets;
+        this.used = used;
+        this.edges = edges;
+        this.vertices = vertices;
+    }
+
+    // pages of first/last pairs for n vertices whose lists are csr[v]..csr[v+1]
+    private static int[][] paged(int[] csr, int n) {
+        int[][] pages = new int[(n+PAGE-1) >>> PAGE_BITS][];
+        for (int p = 0; p < pages.length; p++) {
+            int[] page = new int[2*PAGE];
+            for (int i = 0, v = p << PAGE_BITS; i < PAGE && v < n; i++, v++) {
+                page[2*i] = csr[v];
+                page[2*i+1] = csr[v+1];
+            }
+            pages[p] = page;
+        }
+        return pages;
+    }
+
+    // a copy of the page pointers, with room for v's page, and v's page copied (or created with
+    // the given length) so that it can be written
+    private static int[][] writable(int[][] pages, int v, int length) {
+        int p = v >>> PAGE_BITS;
+        int[][] copy = Arrays.copyOf(pages, Math.max(pages.length, p+1));
+        copy[p] = p < pages.length && pages[p] != null ? pages[p].clone() : new int[length];
+        return copy;
+    }
+
+    public int V() {
+        return this.vertices;
+    }
+
+    public int E() {
+        return this.edges;
+    }
+
+    public int outdegree(int v) {
+        validateVertex(v, V());
+        return lastEdge(v)-firstEdge(v);
+    }
+
+    // the same graph with every edge reversed
+    public CompactDigraph reverse() {
+        int n = V();
+        int[] from = new int[E()];
+        int[] to = new int[E()];
+        int i = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = firstEdge(v); e < lastEdge(v); e++) {
+                from[i] = this.targets[e];
+                to[i] = v;
+                i++;
+            }
+        }
+        return new CompactDigraph(n, from, to, E());
+    }
+
+    // is there no directed cycle? (Kahn's algorithm, so deep graphs don't overflow the stack)
+    public boolean isAcyclic() {
+        int n = V();
+        int[] indegree = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int e = firstEdge(v); e < lastEdge(v); e++) indegree[this.targets[e]]++;
+        }
+
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (indegree[v] == 0) queue[tail++] = v;
+        }
+
+        while (head < tail) {
+            int first = queue[head++];
+            for (int e = firstEdge(first); e < lastEdge(first); e++) {
+                if (--indegree[this.targets[e]] == 0) queue[tail++] = this.targets[e];
+            }
+        }
+
+        return tail == n;
+    }
+
+    // this graph plus one new vertex, numbered V(), without edges. Only call it on the latest
+    // version: versions derived from the same graph would append into the same slots
+    CompactDigraph withVertex() {
+        int n = V();
+        int[][] offsets = writable(this.offsets, n, 2*PAGE);
+        offsets[n >>> PAGE_BITS][2*(n & PAGE_MASK)] = this.used;
+        offsets[n >>> PAGE_BITS][2*(n & PAGE_MASK)+1] = this.used;
+
+        // a page of limits written before holds nothing for n yet
+        int[][] limits = this.limits;
+        int p = n >>> PAGE_BITS;
+        if (p < limits.length && limits[p] != null) {
+            limits = writable(limits, n, PAGE);
+            limits[p][n & PAGE_MASK] = this.used;
+        }
+        return new CompactDigraph(offsets, limits, this.targets, this.used, this.edges, n+1);
+    }
+
+    // this graph plus the edge v -> w, which becomes v's last out-neighbour; the same caveat
+    // as withVertex() applies
+    CompactDigraph withEdge(int v, int w) {
+        int n = V();
+        validateVertex(v, n);
+        validateVertex(w, n);
+
+        int first = firstEdge(v);
+        int last = lastEdge(v);
+        int[] targets = this.targets;
+        int used = this.used;
+        int[][] limits = this.limits;
+
+        if (last == limit(v)) {
+            // v's list is full: it moves to the end of the used slots with room to double
+            int degree = last-first;
+            int room = Math.max(4, 2*(degree+1));
+            if (used+room > targets.length) return compacted(v, w, room);
+
+            System.arraycopy(targets, first, targets, used, degree);
+            first = used;
+            last = used+degree;
+            used += room;
+
+            int p = v >>> PAGE_BITS;
+            boolean tight = p >= limits.length || limits[p] == null;
+            limits = writable(limits, v, PAGE);
+            if (tight) {
+                for (int i = 0, u = p << PAGE_BITS; i < PAGE && u < n; i++, u++) limits[p][i] = lastEdge(u);
+            }
+            limits[p][v & PAGE_MASK] = used;
+        }
+
+        targets[last] = w;
+        int[][] offsets = writable(this.offsets, v, 2*PAGE);
+        offsets[v >>> PAGE_BITS][2*(v & PAGE_MASK)] = first;
+        offsets[v >>> PAGE_BITS][2*(v & PAGE_MASK)+1] = last+1;
+        return new CompactDigraph(offsets, limits, targets, used, this.edges+1, n);
+    }
+
+    // this graph plus v -> w in a new targets array without holes, twice as large as needed.
+    // v's list goes last, with the given room; every other list is left without room
+    private CompactDigraph compacted(int v, int w, int room) {
+        int n = V();
+        int[] targets = new int[Math.max(16, 2*(this.edges+room))];
+        int[] csr = new int[n+1];
+        int used = 0;
+
+        for (int u = 0; u < n; u++) {
+            if (u != v) {
+                System.arraycopy(this.targets, firstEdge(u), targets, used, lastEdge(u)-firstEdge(u));
+                used += lastEdge(u)-firstEdge(u);
+            }
+            csr[u+1] = used;
+        }
+        int[][] offsets = paged(csr, n);
+
+        // v's list, which the pages above show as empty, and its room
+        int degree = lastEdge(v)-firstEdge(v);
+        System.arraycopy(this.targets, firstEdge(v), targets, used, degree);
+        targets[used+degree] = w;
+        offsets[v >>> PAGE_BITS][2*(v & PAGE_MASK)] = used;
+        offsets[v >>> PAGE_BITS][2*(v & PAGE_MASK)+1] = used+degree+1;
+
+        int[][] limits = writable(new int[0][], v, PAGE);
+        int p = v >>> PAGE_BITS;
+        for (int i = 0, u = p << PAGE_BITS; i < PAGE && u < n; i++, u++) limits[p][i] = offsets[p][2*i+1];
+        limits[p][v & PAGE_MASK] = used+room;
+
+        return new CompactDigraph(offsets, limits, targets, used+room, this.edges+1, n);
+    }
+
+    // the end of the slots reserved for v's list
+    private int limit(int v) {
+        int p = v >>> PAGE_BITS;
+        if (p >= this.limits.length || this.limits[p] == null) return lastEdge(v);
+        return this.limits[p][v & PAGE_MASK];
+    }
+
+    // index of v's first outgoing edge
+    int firstEdge(int v) {
+        return this.offsets[v >>> PAGE_BITS][(v & PAGE_MASK) << 1];
+    }
+
+    // one past the index of v's last outgoing edge
+    int lastEdge(int v) {
+        return this.offsets[v >>> PAGE_BITS][((v & PAGE_MASK) << 1) + 1];
+    }
+
+    // head of edge e
+    int target(int e) {
+        return this.targets[e];
+    }
+
+    private static void validateVertex(int v, int n) {
+        if (v < 0 || v >= n) throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (n-1));
+    }
+}
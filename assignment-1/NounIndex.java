@@ -0,0 +1,358 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Immutable dictionary from WordNet nouns to the ids of the synsets containing them.
+//
+// The nouns are kept in sorted order, concatenated into one char[] pool, and each noun's
+// synset ids are a sorted slice of one flat int[] of postings. Lookups go through an open
+// addressing table of noun ordinals probed with String.hashCode(), which String caches, so
+// isNoun() and distance() cost a hash probe and one char comparison instead of a TreeMap
+// descent. There is no per-noun object at all: nouns() builds each String as it iterates.
+//
+// withSynset() records nouns added after the arrays were built in a Delta shared by every
+// later version of the index. Each version sees only the changes up to its own version
+// number, so a reader holding an older index is unaffected, and an update costs a copy of
+// the changed nouns' synset lists rather than a rebuild. Once the delta grows past an
+// eighth of the arrays, the next update folds everything back into fresh arrays.
+final class NounIndex {
+
+    private final char[] pool;
+    private final int[] start;
+    private final int[] postingStart;
+    private final int[] postings;
+    private final int[] hashes;
+    private final int[] table;
+    private final int mask;
+    // changes since the arrays were built; null if there are none
+    private final Delta delta;
+    private final int version;
+    private final int added;
+
+    // adopts the arrays: noun i is pool[start[i]..start[i+1]), the nouns are in sorted order,
+    // and its synsets are postings[postingStart[i]..postingStart[i+1]) in increasing order
+    NounIndex(char[] pool, int[] start, int[] postingStart, int[] postings) {
+        int n = start.length-1;
+        if (n < 0 || postingStart.length != n+1 || start[n] != pool.length || postingStart[n] != postings.length) {
+            throw new IllegalArgumentException("malformed noun index");
+        }
+
+        this.pool = pool;
+        this.start = start;
+        this.postingStart = postingStart;
+        this.postings = postings;
+        this.hashes = new int[n];
+
+        int capacity = Integer.highestOneBit(Math.max(2, 2*n-1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity-1;
+
+        for (int i = 0; i < n; i++) {
+            if (start[i] > start[i+1] || postingStart[i] > postingStart[i+1]) throw new IllegalArgumentException("malformed noun index");
+
+            int h = 0;
+            for (int c = start[i]; c < start[i+1]; c++) h = 31*h + pool[c];
+            this.hashes[i] = h;
+
+            int slot = spread(h) & this.mask;
+            while (this.table[slot] != 0) slot = (slot+1) & this.mask;
+            this.table[slot] = i+1;
+        }
+
+        this.delta = null;
+        this.version = 0;
+        this.added = 0;
+    }
+
+    private NounIndex(NounIndex base, Delta delta, int version, int added) {
+        this.pool = base.pool;
+        this.start = base.start;
+        this.postingStart = base.postingStart;
+        this.postings = base.postings;
+        this.hashes = base.hashes;
+        this.table = base.table;
+        this.mask = base.mask;
+        this.delta = delta;
+        this.version = version;
+        this.added = added;
+    }
+
+    // builds the index from count (noun, synset) pairs: nouns[nounOf[k]] is in synset synsetOf[k]
+    static NounIndex build(String[] nouns, int[] nounOf, int[] synsetOf, int count) {
+        int n = nouns.length;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> nouns[a].compareTo(nouns[b]));
+
+        int[] rank = new int[n];
+        int chars = 0;
+        for (int i = 0; i < n; i++) {
+            rank[order[i]] = i;
+            chars += nouns[i].length();
+        }
+
+        char[] pool = new char[chars];
+        int[] start = new int[n+1];
+        for (int i = 0; i < n; i++) {
+            String noun = nouns[order[i]];
+            noun.getChars(0, noun.length(), pool, start[i]);
+            start[i+1] = start[i]+noun.length();
+        }
+
+        // counting sort of the pairs by noun rank, then sort each noun's synsets
+        int[] postingStart = new int[n+1];
+        for (int k = 0; k < count; k++) postingStart[rank[nounOf[k]]+1]++;
+        for (int i = 0; i < n; i++) postingStart[i+1] += postingStart[i];
+
+        int[] postings = new int[count];
+        int[] next = Arrays.copyOf(postingStart, n);
+        for (int k = 0; k < count; k++) postings[next[rank[nounOf[k]]]++] = synsetOf[k];
+        for (int i = 0; i < n; i++) Arrays.sort(postings, postingStart[i], postingStart[i+1]);
+
+        return new NounIndex(pool, start, postingStart, postings);
+    }
+
+    // this index plus the given nouns in synset id, which must be larger than any synset id
+    // already indexed. Only call it on the latest version: versions derived from the same
+    // index would overwrite each other's changes
+    NounIndex withSynset(int id, String[] words) {
+        Delta delta = this.delta == null ? new Delta() : this.delta;
+        int version = this.version+1;
+        int added = this.added;
+
+        for (String word: new LinkedHashSet<>(Arrays.asList(words))) {
+            int i = find(word);
+            if (i == -1) {
+                i = base() + added++;
+                delta.ids.put(word, i);
+                delta.sorted.put(word, i);
+                delta.changes.put(i, new Change(word, new int[] {id}, version, null));
+            }
+            else {
+                int from = firstSynset(i);
+                int to = lastSynset(i);
+                int[] synsets = Arrays.copyOfRange(postings(i), from, to+1);
+                synsets[to-from] = id;
+                delta.changes.put(i, new Change(noun(i), synsets, version, delta.changes.get(i)));
+            }
+            delta.entries++;
+        }
+
+        NounIndex next = new NounIndex(this, delta, version, added);
+        return delta.entries > Math.max(64, base()/8) ? next.compacted() : next;
+    }
+
+    // the same nouns and synsets held in plain arrays, without a delta
+    NounIndex compacted() {
+        if (this.delta == null) return this;
+
+        int n = size();
+        String[] nouns = new String[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            nouns[i] = noun(i);
+            count += lastSynset(i)-firstSynset(i);
+        }
+
+        int[] nounOf = new int[count];
+        int[] synsetOf = new int[count];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            int[] synsets = postings(i);
+            for (int p = firstSynset(i); p < lastSynset(i); p++) {
+                nounOf[k] = i;
+                synsetOf[k] = synsets[p];
+                k++;
+            }
+        }
+        return build(nouns, nounOf, synsetOf, count);
+    }
+
+    int size() {
+        return base() + this.added;
+    }
+
+    // ordinal of word: its position in sorted order for nouns held in the arrays, and
+    // consecutive from there for nouns added later; -1 if it isn't a noun
+    int find(String word) {
+        int i = findBase(word);
+        if (i != -1 || this.delta == null) return i;
+
+        Integer added = this.delta.ids.get(word);
+        return added == null || added >= size() ? -1 : added;
+    }
+
+    private int findBase(String word) {
+        int h = word.hashCode();
+        int len = word.length();
+
+        int slot = spread(h) & this.mask;
+        for (int entry = this.table[slot]; entry != 0; entry = this.table[slot]) {
+            int i = entry-1;
+            if (this.hashes[i] == h && this.start[i+1]-this.start[i] == len && matches(word, this.start[i])) return i;
+            slot = (slot+1) & this.mask;
+        }
+        return -1;
+    }
+
+    String noun(int i) {
+        if (i >= base()) return change(i).noun;
+        return new String(this.pool, this.start[i], this.start[i+1]-this.start[i]);
+    }
+
+    // the synsets of noun i are postings(i)[firstSynset(i)..lastSynset(i)), in increasing order
+    int firstSynset(int i) {
+        return change(i) != null ? 0 : this.postingStart[i];
+    }
+
+    int lastSynset(int i) {
+        Change change = change(i);
+        return change != null ? change.synsets.length : this.postingStart[i+1];
+    }
+
+    int[] postings(int i) {
+        Change change = change(i);
+        return change != null ? change.synsets : this.postings;
+    }
+
+    // every noun's synsets, for an index without a delta
+    int[] postings() {
+        return this.postings;
+    }
+
+    // read-only view of noun i's synset ids
+    List<Integer> synsets(int i) {
+        int[] synsets = postings(i);
+        int from = firstSynset(i);
+        int size = lastSynset(i)-from;
+        return new AbstractList<Integer>() {
+            public Integer get(int k) {
+                if (k < 0 || k >= size) throw new IndexOutOfBoundsException("index " + k + " out of " + size);
+                return synsets[from+k];
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // all nouns in sorted order
+    Iterable<String> nouns() {
+        if (this.delta == null) {
+            return () -> new Iterator<String>() {
+                private int i = 0;
+
+                public boolean hasNext() {
+                    return i < size();
+                }
+
+                public String next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return noun(i++);
+                }
+            };
+        }
+
+        // merge the arrays with the added nouns this version can see
+        return () -> new Iterator<String>() {
+            private final Iterator<Map.Entry<String, Integer>> added = delta.sorted.entrySet().iterator();
+            private String pending = advance();
+            private int i = 0;
+
+            public boolean hasNext() {
+                return i < base() || pending != null;
+            }
+
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                String noun = i < base() ? noun(i) : null;
+                if (noun == null || (pending != null && pending.compareTo(noun) < 0)) {
+                    noun = pending;
+                    pending = advance();
+                }
+                else i++;
+                return noun;
+            }
+
+            private String advance() {
+                while (added.hasNext()) {
+                    Map.Entry<String, Integer> entry = added.next();
+                    if (entry.getValue() < size()) return entry.getKey();
+                }
+                return null;
+            }
+        };
+    }
+
+    // number of nouns held in the arrays
+    private int base() {
+        return this.start.length-1;
+    }
+
+    // the latest change to noun i this version can see; null if its synsets are in the arrays
+    private Change change(int i) {
+        if (this.delta == null) return null;
+
+        Change change = this.delta.changes.get(i);
+        while (change != null && change.version > this.version) change = change.older;
+        return change;
+    }
+
+    char[] pool() {
+        return this.pool;
+    }
+
+    int[] starts() {
+        return this.start;
+    }
+
+    int[] postingStarts() {
+        return this.postingStart;
+    }
+
+    private boolean matches(String word, int from) {
+        for (int k = 0; k < word.length(); k++) {
+            if (this.pool[from+k] != word.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // nouns added or given new synsets since the arrays were built, shared by every version
+    // derived from them. Only the single writer adds to it; the concurrent maps publish its
+    // changes safely to readers, which skip anything newer than their version
+    private static final class Delta {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<String, Integer> sorted = new ConcurrentSkipListMap<>();
+        private final Map<Integer, Change> changes = new ConcurrentHashMap<>();
+        private int entries;
+    }
+
+    // the synsets of a noun as of a version, linked to the change it replaced
+    private static final class Change {
+        private final String noun;
+        private final int[] synsets;
+        private final int version;
+        private final Change older;
+
+        Change(String noun, int[] synsets, int version, Change older) {
+            this.noun = noun;
+            this.synsets = synsets;
+            this.version = version;
+            this.older = older;
+        }
+    }
+
+    // String hashes of similar words differ mostly in the low bits, so mix in the high ones
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Nearest-noun search over the hypernym graph.
+//
+// distance(x, y) is the shortest walk that goes up from a synset of x through hypernyms to a
+// common ancestor and then down through hyponyms to a synset of y. The search runs a BFS over
+// exactly those walks: an "up" frontier following hypernym edges, and a "down" frontier that
+// every up-visited synset joins at no cost and that follows hyponym (reversed) edges. Synsets
+// reached going down are met in nondecreasing distance from x, so their nouns can be reported
+// as they are found and the search stops as soon as it has k of them.
+//
+// The search uses per-thread scratch arrays reset by a generation stamp, like SAP, so
+// concurrent calls don't interfere. They are shared by every instance, since each WordNet
+// version builds its own, and grow to the largest graph a thread has searched.
+final class NounNeighbors {
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final CompactDigraph hypernyms;
+    private final CompactDigraph hyponyms;
+    private final NounIndex nounIndex;
+    // the nouns of synset s are nouns[nounStart[s]..nounStart[s+1]), as noun ordinals
+    private final int[] nounStart;
+    private final int[] nouns;
+
+    // hyponyms is the reverse of hypernyms
+    NounNeighbors(CompactDigraph hypernyms, CompactDigraph hyponyms, NounIndex nounIndex) {
+        this.hypernyms = hypernyms;
+        this.hyponyms = hyponyms;
+        this.nounIndex = nounIndex;
+
+        int n = hypernyms.V();
+        int pairs = 0;
+        this.nounStart = new int[n+1];
+        for (int i = 0; i < nounIndex.size(); i++) {
+            int[] postings = nounIndex.postings(i);
+            for (int p = nounIndex.firstSynset(i); p < nounIndex.lastSynset(i); p++) this.nounStart[postings[p]+1]++;
+            pairs += nounIndex.lastSynset(i)-nounIndex.firstSynset(i);
+        }
+        for (int s = 0; s < n; s++) this.nounStart[s+1] += this.nounStart[s];
+
+        this.nouns = new int[pairs];
+        int[] next = Arrays.copyOf(this.nounStart, n);
+        for (int i = 0; i < nounIndex.size(); i++) {
+            int[] postings = nounIndex.postings(i);
+            for (int p = nounIndex.firstSynset(i); p < nounIndex.lastSynset(i); p++) {
+                this.nouns[next[postings[p]]++] = i;
+            }
+        }
+    }
+
+    // up to k nouns other than noun (an ordinal), closest first; ties are in no particular order
+    List<String> nearest(int noun, int k) {
+        List<String> output = new ArrayList<>(Math.min(k, 1024));
+        if (k == 0) return output;
+
+        Scratch s = SCRATCH.get();
+        s.begin(this.hypernyms.V(), this.nounIndex.size());
+        s.nounMark[noun] = s.generation;
+
+        int[] postings = this.nounIndex.postings(noun);
+        for (int p = this.nounIndex.firstSynset(noun); p < this.nounIndex.lastSynset(noun); p++) {
+            int id = postings[p];
+            if (s.upMark[id] == s.generation) continue;
+            s.upMark[id] = s.generation;
+            s.up[s.upTail++] = id;
+        }
+
+        while (s.upHead < s.upTail || s.downHead < s.downTail) {
+            int upEnd = s.upTail;
+            int downEnd;
+
+            // every synset reached going up at this distance also starts going down from here
+            for (int i = s.upHead; i < upEnd; i++) reachDown(s, s.up[i]);
+            downEnd = s.downTail;
+
+            for (int i = s.downHead; i < downEnd; i++) {
+                int synset = s.down[i];
+                for (int p = this.nounStart[synset]; p < this.nounStart[synset+1]; p++) {
+                    int other = this.nouns[p];
+                    if (s.nounMark[other] == s.generation) continue;
+
+                    s.nounMark[other] = s.generation;
+                    output.add(this.nounIndex.noun(other));
+                    if (output.size() == k) return output;
+                }
+            }
+
+            // advance both frontiers by one edge
+            for (int i = s.upHead; i < upEnd; i++) {
+                int first = s.up[i];
+                for (int e = this.hypernyms.firstEdge(first); e < this.hypernyms.lastEdge(first); e++) {
+                    int nb = this.hypernyms.target(e);
+                    if (s.upMark[nb] == s.generation) continue;
+                    s.upMark[nb] = s.generation;
+                    s.up[s.upTail++] = nb;
+                }
+            }
+            for (int i = s.downHead; i < downEnd; i++) {
+                int first = s.down[i];
+                for (int e = this.hyponyms.firstEdge(first); e < this.hyponyms.lastEdge(first); e++) {
+                    reachDown(s, this.hyponyms.target(e));
+                }
+            }
+
+            s.upHead = upEnd;
+            s.downHead = downEnd;
+        }
+
+        return output;
+    }
+
+    private static void reachDown(Scratch s, int synset) {
+        if (s.downMark[synset] == s.generation) return;
+        s.downMark[synset] = s.generation;
+        s.down[s.downTail++] = synset;
+    }
+
+    private static final class Scratch {
+        private int[] upMark = new int[0];
+        private int[] downMark = new int[0];
+        private int[] nounMark = new int[0];
+        private int[] up = new int[0];
+        private int[] down = new int[0];
+        private int generation;
+        private int upHead, upTail, downHead, downTail;
+
+        void begin(int synsets, int nouns) {
+            if (upMark.length < synsets || nounMark.length < nouns) {
+                // leave room for a WordNet that keeps growing
+                if (upMark.length > 0) {
+                    synsets = Math.max(synsets, upMark.length + upMark.length/8);
+                    nouns = Math.max(nouns, nounMark.length + nounMark.length/8);
+                }
+                upMark = new int[synsets];
+                downMark = new int[synsets];
+                nounMark = new int[nouns];
+                up = new int[synsets];
+                down = new int[synsets];
+                generation = 0;
+            }
+
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(upMark, 0);
+                Arrays.fill(downMark, 0);
+                Arrays.fill(nounMark, 0);
+                generation = 0;
+            }
+
+            generation++;
+            upHead = upTail = downHead = downTail = 0;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class Outcast {
 
@@ -8,35 +12,112 @@ public class Outcast {
         this.wordNet = wordnet;
     }
 
+    // the noun with the largest sum of distances to the others (the first such noun on ties).
+    // Each unordered pair is computed once, in parallel, by WordNet.distances
     public String outcast(String[] nouns) {
+        return outcast(nouns, false);
+    }
+
+    // as above; with prune set, candidates are scored one at a time and a candidate is dropped
+    // as soon as its running sum plus an upper bound on its remaining distances can no longer
+    // beat the best sum so far. Pruning needs a rooted hypernym graph for the bound and falls
+    // back to the full parallel computation otherwise
+    public String outcast(String[] nouns, boolean prune) {
+
+        if (nouns == null || nouns.length == 0) throw new IllegalArgumentException();
+
+        if (prune) {
+            int[] height = new int[nouns.length];
+            for (int i = 0; i < nouns.length; i++) {
+                height[i] = wordNet.rootDistance(nouns[i]);
+                if (height[i] == -1) return outcast(nouns, false);
+            }
+            return nouns[pruned(nouns, height)];
+        }
 
-        if (nouns == null) throw new IllegalArgumentException();
+        int[][] dist = wordNet.distances(nouns);
 
         String output = nouns[0];
         int dis = Integer.MIN_VALUE;
 
-        for (String n: nouns) {
+        for (int i = 0; i < nouns.length; i++) {
             int newDist = 0;
-            for (String noun: nouns) {
-                newDist += wordNet.distance(n, noun);
-            }
+            for (int d: dist[i]) newDist += d;
 
             if (newDist > dis) {
                 dis = newDist;
-                output = n;
+                output = nouns[i];
             }
         }
         return output;
     }
 
+    // outcasts of many noun sets against the same WordNet, scored in parallel
+    public String[] outcasts(List<String[]> nounSets, boolean prune) {
+        if (nounSets == null) throw new IllegalArgumentException();
+
+        String[] output = new String[nounSets.size()];
+        IntStream.range(0, output.length).parallel().forEach(i -> output[i] = outcast(nounSets.get(i), prune));
+        return output;
+    }
+
+    // index of the outcast, given each noun's distance to the root; distance(a, b) is bounded by
+    // height[a] + height[b] because the root is a common ancestor of every pair
+    private int pruned(String[] nouns, int[] height) {
+        int n = nouns.length;
+        int[][] memo = new int[n][n];
+        for (int[] row: memo) Arrays.fill(row, -1);
+
+        long heights = 0;
+        for (int h: height) heights += h;
+
+        int output = 0;
+        long dis = Long.MIN_VALUE;
+
+        for (int i = 0; i < n; i++) {
+            long newDist = 0;
+            // sum of the bounds of the distances not computed yet
+            long bound = (long) (n-1)*height[i] + heights-height[i];
+
+            // known distances first: they tighten the bound for free
+            for (int j = 0; j < n; j++) {
+                if (j == i || memo[i][j] == -1) continue;
+                newDist += memo[i][j];
+                bound -= height[i]+height[j];
+            }
+
+            for (int j = 0; j < n && newDist+bound > dis; j++) {
+                if (j == i || memo[i][j] != -1) continue;
+
+                int d = wordNet.distance(nouns[i], nouns[j]);
+                memo[i][j] = d;
+                memo[j][i] = d;
+                newDist += d;
+                bound -= height[i]+height[j];
+            }
+
+            // a pruned candidate has newDist <= newDist+bound <= dis, so it can't win here
+            if (newDist > dis) {
+                dis = newDist;
+                output = i;
+            }
+        }
+        return output;
+    }
 
     public static void main(String[] args) {
         WordNet wordnet = new WordNet(args[0], args[1]);
         Outcast outcast = new Outcast(wordnet);
+
+        List<String[]> nounSets = new ArrayList<>();
         for (int t = 2; t < args.length; t++) {
             In in = new In(args[t]);
-            String[] nouns = in.readAllStrings();
-            StdOut.println(args[t] + ": " + outcast.outcast(nouns));
+            nounSets.add(in.readAllStrings());
+        }
+
+        String[] output = outcast.outcasts(nounSets, true);
+        for (int t = 2; t < args.length; t++) {
+            StdOut.println(args[t] + ": " + output[t-2]);
         }
     }
-}
\ No newline at end of file
+}
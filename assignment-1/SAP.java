@@ -1,134 +1,392 @@
-import edu.princeton.cs.algs4.BreadthFirstDirectedPaths;
 import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.Queue;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
+import java.util.Arrays;
 
+// Thread safety: an SAP never changes after construction, and each thread searches in its own
+// thread-local scratch buffers, so length() and ancestor() may be called concurrently from any
+// number of threads. A pinned Source is immutable too and can be shared the same way.
 public class SAP {
 
-    private final Digraph graph;
+    // a query result packs (length << 32 | ancestor); no common ancestor packs to (-1, -1)
+    static final long NO_PATH = -1L;
+
+    private static final ThreadLocal<Search> SEARCH = ThreadLocal.withInitial(Search::new);
+
+    private final CompactDigraph graph;
+    private final AncestorIndex index;
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        this.graph = new Digraph(G);
+        this(new CompactDigraph(G), null);
+    }
+
+    // shares G without copying it; CompactDigraph is immutable. index may be null, otherwise
+    // queries on indexed vertices are answered from it and the rest fall back to a search
+    SAP(CompactDigraph G, AncestorIndex index) {
+        if (G == null) throw new IllegalArgumentException("digraph is null");
+        this.graph = G;
+        this.index = index;
     }
 
     // length of shortest ancestral path between v and w; -1 if no such path
     public int length(int v, int w) {
-
-        BreadthFirstDirectedPaths vPath = new BreadthFirstDirectedPaths(this.graph, v);
-        BreadthFirstDirectedPaths wPath = new BreadthFirstDirectedPaths(this.graph, w);
-
-        int ind = this.random(vPath, wPath, w);
-
-        return ind == -1 ? -1 : vPath.distTo(ind) + wPath.distTo(ind);
+        return lengthOf(query(v, w));
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
     public int ancestor(int v, int w) {
+        return ancestorOf(query(v, w));
+    }
 
-        BreadthFirstDirectedPaths vPath = new BreadthFirstDirectedPaths(this.graph, v);
-        BreadthFirstDirectedPaths wPath = new BreadthFirstDirectedPaths(this.graph, w);
+    // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        return lengthOf(query(v, w));
+    }
 
-        return this.random(vPath, wPath, w);
+    // a common ancestor that participates in shortest ancestral path; -1 if no such path
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        return ancestorOf(query(v, w));
     }
 
-    private int random(BreadthFirstDirectedPaths vPath, BreadthFirstDirectedPaths wPath, int w) {
-        boolean[] visit = new boolean[this.graph.V()];
-        int dis = Integer.MAX_VALUE;
-        int ind = -1;
+    // length and ancestor of the shortest ancestral path between v and w, packed
+    long query(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
 
-        Queue<Integer> queue = new Queue<>();
-        queue.enqueue(w);
-        visit[w] = true;
+        if (this.index != null) {
+            long result = this.index.query(v, w);
+            if (result != AncestorIndex.UNKNOWN) return result;
+        }
 
-        while (!queue.isEmpty()) {
-            int first = queue.dequeue();
+        Search search = SEARCH.get();
+        search.begin(this.graph);
+        search.seedV(v);
+        search.seedW(w);
+        return search.run();
+    }
 
-            if (vPath.hasPathTo(first)) {
-                int newDis = vPath.distTo(first) + wPath.distTo(first);
+    // length and ancestor of the shortest ancestral path between the sets v and w, packed
+    long query(Iterable<Integer> v, Iterable<Integer> w) {
+        validation(v);
+        validation(w);
 
-                if (newDis < dis) {
-                    ind = first;
-                    dis = newDis;
+        if (this.index != null) {
+            long result = this.index.query(v, w);
+            if (result != AncestorIndex.UNKNOWN) return result;
+        }
 
-                    if (dis == 0) break;
-                }
-            }
+        Search search = SEARCH.get();
+        search.begin(this.graph);
+        for (int value: v) search.seedV(value);
+        for (int value: w) search.seedW(value);
+        return search.run();
+    }
 
-            for (int nb: graph.adj(first)) {
-                if (visit[nb]) continue;
+    // length and ancestor of the shortest ancestral path between the sets v[vFrom..vTo) and
+    // w[wFrom..wTo), packed; the same as query(Iterable, Iterable) without boxing
+    long query(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        for (int i = vFrom; i < vTo; i++) validateVertex(v[i]);
+        for (int i = wFrom; i < wTo; i++) validateVertex(w[i]);
 
-                queue.enqueue(nb);
-                visit[nb] = true;
-            }
+        if (this.index != null) {
+            long result = this.index.query(v, vFrom, vTo, w, wFrom, wTo);
+            if (result != AncestorIndex.UNKNOWN) return result;
         }
 
-        return ind;
+        Search search = SEARCH.get();
+        search.begin(this.graph);
+        for (int i = vFrom; i < vTo; i++) search.seedV(v[i]);
+        for (int i = wFrom; i < wTo; i++) search.seedW(w[i]);
+        return search.run();
     }
 
-    // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
-    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+    // pins v as the source of many queries: v's ancestors are found once, after which each
+    // target is searched from its own side only
+    public Source pin(int v) {
+        validateVertex(v);
+
+        Search search = SEARCH.get();
+        search.begin(this.graph);
+        search.seedV(v);
+        int count = search.exhaustV();
+        return new Source(search.queueV, search.distV, count);
+    }
 
+    // pins the set v as the source of many queries
+    public Source pin(Iterable<Integer> v) {
         validation(v);
-        validation(w);
 
-        BreadthFirstDirectedPaths vPath = new BreadthFirstDirectedPaths(this.graph, v);
-        BreadthFirstDirectedPaths wPath = new BreadthFirstDirectedPaths(this.graph, w);
+        Search search = SEARCH.get();
+        search.begin(this.graph);
+        for (int value: v) search.seedV(value);
+        int count = search.exhaustV();
+        return new Source(search.queueV, search.distV, count);
+    }
 
-        int ind = this.random(vPath, wPath, w);
-        return ind == -1 ? -1 : vPath.distTo(ind)+wPath.distTo(ind);
+    static long pack(int length, int ancestor) {
+        return ((long) length << 32) | (ancestor & 0xffffffffL);
     }
 
-    // a common ancestor that participates in shortest ancestral path; -1 if no such path
-    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        validation(v);
-        validation(w);
-        BreadthFirstDirectedPaths vPath = new BreadthFirstDirectedPaths(this.graph, v);
-        BreadthFirstDirectedPaths wPath = new BreadthFirstDirectedPaths(this.graph, w);
+    static int lengthOf(long result) {
+        return (int) (result >> 32);
+    }
 
-        return this.random(vPath, wPath, w);
+    static int ancestorOf(long result) {
+        return (int) result;
     }
 
     private void validation(Iterable<Integer> values) {
         if (values == null) throw new IllegalArgumentException();
-        for (Integer v: values) if (v == null) throw new IllegalArgumentException();
+        for (Integer v: values) {
+            if (v == null) throw new IllegalArgumentException();
+            validateVertex(v);
+        }
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= this.graph.V()) throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (this.graph.V()-1));
+    }
+
+    // The ancestors of a fixed source set and their distances, for answering length() and
+    // ancestor() against any number of targets. Immutable, so it can be shared across threads.
+    public final class Source {
+        // open addressing on vertex+1, so 0 marks an empty slot
+        private final int[] keys;
+        private final int[] dists;
+        private final int mask;
+        private final int shift;
+
+        private Source(int[] vertices, int[] distTo, int count) {
+            int capacity = Integer.highestOneBit(Math.max(2, 2*count-1)) << 1;
+            this.keys = new int[capacity];
+            this.dists = new int[capacity];
+            this.mask = capacity-1;
+            this.shift = Integer.numberOfLeadingZeros(capacity)+1;
+
+            for (int i = 0; i < count; i++) {
+                int x = vertices[i];
+                int slot = slot(x);
+                while (this.keys[slot] != 0) slot = (slot+1) & this.mask;
+                this.keys[slot] = x+1;
+                this.dists[slot] = distTo[x];
+            }
+        }
+
+        // length of shortest ancestral path between the source and w; -1 if no such path
+        public int length(int w) {
+            return lengthOf(query(w));
+        }
+
+        // a common ancestor of the source and w on a shortest ancestral path; -1 if no such path
+        public int ancestor(int w) {
+            return ancestorOf(query(w));
+        }
+
+        // length of shortest ancestral path between the source and any vertex in w; -1 if no such path
+        public int length(Iterable<Integer> w) {
+            return lengthOf(query(w));
+        }
+
+        // a common ancestor of the source and w on a shortest ancestral path; -1 if no such path
+        public int ancestor(Iterable<Integer> w) {
+            return ancestorOf(query(w));
+        }
+
+        long query(int w) {
+            validateVertex(w);
+
+            Search search = SEARCH.get();
+            search.begin(graph);
+            search.seedW(w);
+            return search.runAgainst(this);
+        }
+
+        long query(Iterable<Integer> w) {
+            validation(w);
+
+            Search search = SEARCH.get();
+            search.begin(graph);
+            for (int value: w) search.seedW(value);
+            return search.runAgainst(this);
+        }
+
+        // distance from the source to its ancestor x; -1 if x isn't an ancestor
+        int distanceTo(int x) {
+            int slot = slot(x);
+            while (this.keys[slot] != 0) {
+                if (this.keys[slot] == x+1) return this.dists[slot];
+                slot = (slot+1) & this.mask;
+            }
+            return -1;
+        }
+
+        private int slot(int x) {
+            // Fibonacci hashing: the top bits of the product are the well mixed ones
+            return (x * 0x9e3779b9) >>> this.shift;
+        }
     }
 
-    private int random(BreadthFirstDirectedPaths vPath, BreadthFirstDirectedPaths wPath, Iterable<Integer> w) {
-        boolean[] visit = new boolean[this.graph.V()];
-        int dis = Integer.MAX_VALUE;
-        int ind = -1;
-        Queue<Integer> queue = new Queue<>();
+    // Bidirectional BFS: the v-side and w-side frontiers are expanded one level at a time in
+    // lockstep, and a side stops as soon as its next level can no longer beat the best
+    // ancestral distance found so far. Only the ancestors near v and w are ever touched.
+    //
+    // One instance lives per thread and is reused by every query on every SAP. A vertex's
+    // distance is only valid when its mark equals the current generation, so starting a new
+    // query is a counter bump rather than clearing or reallocating the arrays.
+    private static final class Search {
+        private int[] distV = new int[0];
+        private int[] distW = new int[0];
+        private int[] markV = new int[0];
+        private int[] markW = new int[0];
+        private int[] queueV = new int[0];
+        private int[] queueW = new int[0];
+        private int generation;
+        private CompactDigraph graph;
+        private int headV, tailV, headW, tailW;
+        private int best;
+        private int ancestor;
+
+        void begin(CompactDigraph g) {
+            int n = g.V();
+            if (markV.length < n) {
+                // a graph that grew once (WordNet.addSynset) is likely to grow again
+                if (markV.length > 0) n = Math.max(n, markV.length + markV.length/8);
+                distV = new int[n];
+                distW = new int[n];
+                markV = new int[n];
+                markW = new int[n];
+                queueV = new int[n];
+                queueW = new int[n];
+                generation = 0;
+            }
+
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(markV, 0);
+                Arrays.fill(markW, 0);
+                generation = 0;
+            }
+
+            generation++;
+            graph = g;
+            headV = tailV = headW = tailW = 0;
+            best = Integer.MAX_VALUE;
+            ancestor = -1;
+        }
+
+        void seedV(int s) {
+            if (markV[s] == generation) return;
+            markV[s] = generation;
+            distV[s] = 0;
+            queueV[tailV++] = s;
+            if (markW[s] == generation) relax(s, distW[s]);
+        }
+
+        void seedW(int s) {
+            if (markW[s] == generation) return;
+            markW[s] = generation;
+            distW[s] = 0;
+            queueW[tailW++] = s;
+            if (markV[s] == generation) relax(s, distV[s]);
+        }
+
+        long run() {
+            int depth = 0;
+            boolean moreV = headV < tailV;
+            boolean moreW = headW < tailW;
 
-        for (int value: w) {
-            queue.enqueue(value);
-            visit[value] = true;
+            // every vertex found on the next level is at least depth+1 away from its own side
+            while ((moreV || moreW) && depth+1 < best) {
+                if (moreV) moreV = expandV(depth);
+                if (moreW && depth+1 < best) moreW = expandW(depth);
+                depth++;
+            }
+
+            return end();
         }
 
-        while (!queue.isEmpty()) {
-            int first = queue.dequeue();
+        // expands the v-side to every ancestor of the sources; they are then queueV[0..count)
+        int exhaustV() {
+            for (int depth = 0; expandV(depth); depth++) { }
+
+            end();
+            return tailV;
+        }
+
+        // searches from the w-side only, looking up the v-side in a pinned source
+        long runAgainst(Source source) {
+            for (int i = 0; i < tailW; i++) {
+                int dis = source.distanceTo(queueW[i]);
+                if (dis != -1) relax(queueW[i], dis);
+            }
+
+            for (int depth = 0; depth+1 < best && headW < tailW; depth++) {
+                while (headW < tailW && distW[queueW[headW]] == depth) {
+                    int first = queueW[headW++];
+
+                    for (int e = graph.firstEdge(first); e < graph.lastEdge(first); e++) {
+                        int nb = graph.target(e);
+                        if (markW[nb] == generation) continue;
 
-            if (vPath.hasPathTo(first)) {
-                int newDis = vPath.distTo(first) + wPath.distTo(first);
+                        markW[nb] = generation;
+                        distW[nb] = depth+1;
+                        queueW[tailW++] = nb;
 
-                if (newDis < dis) {
-                    ind = first;
-                    dis = newDis;
+                        int dis = source.distanceTo(nb);
+                        if (dis != -1) relax(nb, depth+1+dis);
+                    }
+                }
+            }
+
+            return end();
+        }
 
-                    if (dis == 0) break;
+        // don't pin the caller's graph to this thread
+        private long end() {
+            graph = null;
+            return ancestor == -1 ? NO_PATH : pack(best, ancestor);
+        }
+        private boolean expandV(int depth) {
+            while (headV < tailV && distV[queueV[headV]] == depth) {
+                int first = queueV[headV++];
+
+                for (int e = graph.firstEdge(first); e < graph.lastEdge(first); e++) {
+                    int nb = graph.target(e);
+                    if (markV[nb] == generation) continue;
+
+                    markV[nb] = generation;
+                    distV[nb] = depth+1;
+                    queueV[tailV++] = nb;
+                    if (markW[nb] == generation) relax(nb, depth+1+distW[nb]);
                 }
             }
+            return headV < tailV;
+        }
 
-            for (int nb: graph.adj(first)) {
-                if (!visit[nb]) {
-                    queue.enqueue(nb);
-                    visit[nb] = true;
+        private boolean expandW(int depth) {
+            while (headW < tailW && distW[queueW[headW]] == depth) {
+                int first = queueW[headW++];
+
+                for (int e = graph.firstEdge(first); e < graph.lastEdge(first); e++) {
+                    int nb = graph.target(e);
+                    if (markW[nb] == generation) continue;
+
+                    markW[nb] = generation;
+                    distW[nb] = depth+1;
+                    queueW[tailW++] = nb;
+                    if (markV[nb] == generation) relax(nb, depth+1+distV[nb]);
                 }
             }
+            return headW < tailW;
+        }
+
+        private void relax(int x, int dis) {
+            if (dis < best) {
+                best = dis;
+                ancestor = x;
+            }
         }
-        return ind;
     }
 
     // do unit testing of this class
@@ -146,4 +404,4 @@ public class SAP {
         }
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,372 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded, thread-safe cache of shortest ancestral path results keyed on an unordered pair of
+// synset sets, so distance(a, b), distance(b, a) and sap(a, b) all share one entry.
+//
+// The cache is split into independently locked segments so concurrent queries rarely contend;
+// each segment holds an equal share of the capacity and evicts on its own using the chosen
+// policy. Hit, miss and eviction counters are kept for sizing the cache in production.
+//
+// When the graph changes, invalidate() bumps an epoch and stamps each affected synset with it,
+// at a cost proportional to the change rather than to the size of the cache. Every entry
+// remembers the epoch its query started at, and get() drops an entry lazily once one of its
+// synsets carries a later stamp; put() refuses such a result outright.
+public final class SapCache {
+
+    public enum Policy { LRU, LFU }
+
+    // returned by get() when the key isn't cached
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final Policy policy;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong epoch = new AtomicLong();
+    // the epoch of the last invalidate() that touched each synset, 0 for never; grows with the
+    // highest synset invalidated, and is replaced only by invalidate(), which is serialized
+    private volatile AtomicLongArray changed = new AtomicLongArray(0);
+
+    public SapCache(int capacity, Policy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        if (policy == null) throw new IllegalArgumentException("policy is null");
+
+        this.capacity = capacity;
+        this.policy = policy;
+
+        int count = Math.min(SEGMENTS, capacity);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // spread the remainder so the segment capacities add up to capacity
+            int share = capacity/count + (i < capacity % count ? 1 : 0);
+            this.segments[i] = policy == Policy.LRU ? new LruSegment(share) : new LfuSegment(share);
+        }
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public Policy policy() {
+        return this.policy;
+    }
+
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    // number of cached results
+    public int size() {
+        int size = 0;
+        for (Segment segment: this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment: this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    // the packed SAP result cached for key, or ABSENT
+    long get(Key key) {
+        Segment segment = segmentFor(key);
+        long value;
+        synchronized (segment) {
+            value = segment.get(key, this.changed);
+        }
+
+        if (value == ABSENT) this.misses.increment();
+        else this.hits.increment();
+        return value;
+    }
+
+    // read before computing a result to put()
+    long epoch() {
+        return this.epoch.get();
+    }
+
+    // caches value for key unless invalidate() has touched one of its synsets since epoch was read
+    void put(Key key, long value, long epoch) {
+        if (key.changedSince(epoch, this.changed)) return;
+
+        Segment segment = segmentFor(key);
+        boolean evicted;
+        synchronized (segment) {
+            evicted = segment.put(key, value, epoch);
+        }
+
+        if (evicted) this.evictions.increment();
+    }
+
+    // marks every entry whose synset sets include one of the given synsets as stale
+    synchronized void invalidate(BitSet synsets) {
+        long stamp = this.epoch.incrementAndGet();
+        AtomicLongArray changed = this.changed;
+        if (synsets.length() > changed.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max(synsets.length(), 2*changed.length()));
+            for (int id = 0; id < changed.length(); id++) grown.set(id, changed.get(id));
+            changed = grown;
+        }
+
+        for (int id = synsets.nextSetBit(0); id >= 0; id = synsets.nextSetBit(id+1)) changed.set(id, stamp);
+        this.changed = changed;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        h ^= h >>> 16;
+        return this.segments[(h & 0x7fffffff) % this.segments.length];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SapCache[%s, size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                this.policy, size(), this.capacity, hits(), misses(), evictions());
+    }
+
+    // unordered pair of synset id sets; both arrays are sorted so equal sets compare equal
+    static final class Key {
+        private final int[] a;
+        private final int[] b;
+        private final int hash;
+
+        Key(int[] a, int[] b) {
+            this.a = a;
+            this.b = b;
+            // symmetric, so (a, b) and (b, a) land in the same bucket
+            this.hash = Arrays.hashCode(a) + Arrays.hashCode(b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+            if (this.hash != other.hash) return false;
+            return (Arrays.equals(this.a, other.a) && Arrays.equals(this.b, other.b))
+                    || (Arrays.equals(this.a, other.b) && Arrays.equals(this.b, other.a));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        // true if invalidate() has touched one of the synsets since epoch
+        boolean changedSince(long epoch, AtomicLongArray changed) {
+            int n = changed.length();
+            for (int id: this.a) {
+                if (id < n && changed.get(id) > epoch) return true;
+            }
+            for (int id: this.b) {
+                if (id < n && changed.get(id) > epoch) return true;
+            }
+            return false;
+        }
+    }
+
+    private interface Segment {
+        // the value cached for key, or ABSENT; an entry that is stale under changed is dropped
+        long get(Key key, AtomicLongArray changed);
+
+        // caches value, computed by a query that started at epoch; returns true if an entry had
+        // to be evicted to make room
+        boolean put(Key key, long value, long epoch);
+
+        int size();
+
+        void clear();
+    }
+
+    // least recently used: an access-ordered LinkedHashMap drops its eldest entry
+    private static final class LruSegment implements Segment {
+        private final int capacity;
+        private final LinkedHashMap<Key, Entry> map;
+
+        LruSegment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        public long get(Key key, AtomicLongArray changed) {
+            Entry entry = this.map.get(key);
+            if (entry == null) return ABSENT;
+
+            if (key.changedSince(entry.epoch, changed)) {
+                this.map.remove(key);
+                return ABSENT;
+            }
+            return entry.value;
+        }
+
+        public boolean put(Key key, long value, long epoch) {
+            boolean evict = this.map.size() >= this.capacity && !this.map.containsKey(key);
+            if (evict) {
+                Key eldest = this.map.keySet().iterator().next();
+                this.map.remove(eldest);
+            }
+            this.map.put(key, new Entry(value, epoch));
+            return evict;
+        }
+
+        public int size() {
+            return this.map.size();
+        }
+
+        public void clear() {
+            this.map.clear();
+        }
+
+        private static final class Entry {
+            private final long value;
+            private final long epoch;
+
+            Entry(long value, long epoch) {
+                this.value = value;
+                this.epoch = epoch;
+            }
+        }
+    }
+
+    // least frequently used, ties broken by least recent use. Entries with the same access count
+    // sit in one circular doubly linked list, so get, put and evict are all O(1).
+    private static final class LfuSegment implements Segment {
+        private final int capacity;
+        private final Map<Key, Node> nodes = new HashMap<>();
+        private final Map<Integer, Node> lists = new HashMap<>();
+        private int minFrequency;
+
+        LfuSegment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public long get(Key key, AtomicLongArray changed) {
+            Node node = this.nodes.get(key);
+            if (node == null) return ABSENT;
+
+            if (key.changedSince(node.epoch, changed)) {
+                unlink(node);
+                this.nodes.remove(key);
+                // the least frequent list may be gone
+                if (!this.lists.containsKey(this.minFrequency)) {
+                    this.minFrequency = this.lists.isEmpty() ? 0 : Collections.min(this.lists.keySet());
+                }
+                return ABSENT;
+            }
+
+            touch(node);
+            return node.value;
+        }
+
+        public boolean put(Key key, long value, long epoch) {
+            Node node = this.nodes.get(key);
+            if (node != null) {
+                node.value = value;
+                node.epoch = epoch;
+                touch(node);
+                return false;
+            }
+
+            boolean evict = this.nodes.size() >= this.capacity;
+            if (evict) {
+                Node head = this.lists.get(this.minFrequency);
+                Node victim = head.prev;
+                unlink(victim);
+                this.nodes.remove(victim.key);
+            }
+
+            node = new Node(key, value, epoch);
+            this.nodes.put(key, node);
+            link(node);
+            this.minFrequency = 1;
+            return evict;
+        }
+
+        public int size() {
+            return this.nodes.size();
+        }
+
+        public void clear() {
+            this.nodes.clear();
+            this.lists.clear();
+            this.minFrequency = 0;
+        }
+
+        private void touch(Node node) {
+            unlink(node);
+            if (node.frequency == this.minFrequency && !this.lists.containsKey(node.frequency)) this.minFrequency++;
+            node.frequency++;
+            link(node);
+        }
+
+        // inserts node at the most recently used end of its frequency list
+        private void link(Node node) {
+            Node head = this.lists.get(node.frequency);
+            if (head == null) {
+                node.next = node;
+                node.prev = node;
+            }
+            else {
+                node.next = head;
+                node.prev = head.prev;
+                head.prev.next = node;
+                head.prev = node;
+            }
+            this.lists.put(node.frequency, node);
+        }
+
+        private void unlink(Node node) {
+            if (node.next == node) {
+                this.lists.remove(node.frequency);
+                return;
+            }
+
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            if (this.lists.get(node.frequency) == node) this.lists.put(node.frequency, node.next);
+        }
+
+        private static final class Node {
+            private final Key key;
+            private long value;
+            private long epoch;
+            private int frequency = 1;
+            private Node prev;
+            private Node next;
+
+            Node(Key key, long value, long epoch) {
+                this.key = key;
+                this.value = value;
+                this.epoch = epoch;
+            }
+        }
+    }
+}
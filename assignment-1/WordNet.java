@@ -1,127 +1,422 @@
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.DirectedCycle;
-import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.Topological;
+import edu.princeton.cs.algs4.StdOut;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
+// Thread safety: every query method may be called from any number of threads at once without
+// external locking. A query reads one immutable version of the graph, noun index and synset
+// table, SAP keeps its per-query scratch buffers in thread-local storage, and the optional
+// result cache is internally synchronized. enableCache() and disableCache() swap the cache
+// atomically; queries already running finish on the old one.
+//
+// addSynset() and addHypernym() update a live WordNet. Updates are serialized with each other;
+// each builds a new version that shares almost everything with the previous one and publishes
+// it atomically, so a query sees either all of an update or none of it.
 public class WordNet {
 
-    private Synset[] synsets;
-    private Digraph graph;
-    private final Map<String, List<Integer>> nounMap = new TreeMap<>();
+    private volatile State state;
+    private volatile SapCache cache;
 
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
+        this(synsets, hypernyms, 0);
+    }
+
+    // as above, and also precomputes the ancestors of every synset with at most maxIndexedAncestors
+    // of them, so distance() and sap() become a merge of two sorted lists instead of a graph search;
+    // queries on synsets with more ancestors fall back to the search. 0 disables the index, and the
+    // index never takes more than 8 * maxIndexedAncestors bytes per synset
+    public WordNet(String synsets, String hypernyms, int maxIndexedAncestors) {
+        if (maxIndexedAncestors < 0) throw new IllegalArgumentException("maxIndexedAncestors is negative");
         if (synsets == null || hypernyms == null) throw new IllegalArgumentException("value in constructor null");
 
-        In in = new In(synsets);
-        String[] lines = in.readAllLines();
-        this.buildSynsets(lines);
-        this.buildGraph(hypernyms, lines.length);
+        WordNetFiles.Synsets table = WordNetFiles.readSynsets(synsets);
+        NounIndex nounIndex = WordNetFiles.indexNouns(table);
+        CompactDigraph graph = WordNetFiles.readHypernyms(hypernyms, table.size());
+
+        if (!graph.isAcyclic()) throw new IllegalArgumentException("hypernyms contain a cycle");
+
+        this.state = State.load(table, graph, nounIndex, maxIndexedAncestors);
+    }
+
+    private WordNet(WordNetSnapshot snapshot, int maxIndexedAncestors) {
+        if (!snapshot.acyclic && !snapshot.graph.isAcyclic()) throw new IllegalArgumentException("hypernyms contain a cycle");
 
-        Topological topological = new Topological(this.graph);
-        DirectedCycle directedCycle = new DirectedCycle(this.graph);
+        this.state = State.load(snapshot.synsets, snapshot.graph, snapshot.nounIndex, maxIndexedAncestors);
+    }
 
-        if (!topological.hasOrder() || directedCycle.hasCycle()) throw new IllegalArgumentException();
-        in.close();
+    // loads a WordNet saved by writeSnapshot(), without parsing or re-validating the text files
+    public static WordNet readSnapshot(String snapshot) {
+        return readSnapshot(snapshot, 0);
     }
 
-    private void buildSynsets(String[] lines) {
-        this.synsets = new Synset[lines.length];
+    // as above, with an ancestor index as described for WordNet(synsets, hypernyms, maxIndexedAncestors)
+    public static WordNet readSnapshot(String snapshot, int maxIndexedAncestors) {
+        if (snapshot == null) throw new IllegalArgumentException("snapshot file name is null");
+        if (maxIndexedAncestors < 0) throw new IllegalArgumentException("maxIndexedAncestors is negative");
+
+        return new WordNet(WordNetSnapshot.read(snapshot), maxIndexedAncestors);
+    }
 
-        for (String s: lines) {
-            String[] arr = s.split(",");
-            int id = Integer.parseInt(arr[0]);
-            String[] set = arr[1].split(" ");
-            String gloss = arr[2];
+    // saves the graph, synsets and nouns to a binary snapshot file for readSnapshot()
+    public void writeSnapshot(String snapshot) {
+        if (snapshot == null) throw new IllegalArgumentException("snapshot file name is null");
 
-            synsets[id] = new Synset(id, set, gloss);
+        State s = this.state;
+        WordNetSnapshot.write(snapshot, s.synsets, s.graph, s.nounIndex);
+    }
 
-            for (String noun: set) {
-                List<Integer> list = this.nounMap.computeIfAbsent(noun, k -> new ArrayList<>());
-                list.add(id);
+    // adds a synset containing the given nouns, with no hypernyms yet, and returns its id. Nouns
+    // that are new become WordNet nouns. No cached result or indexed ancestor list changes.
+    // Apart from the nouns, costs time proportional to V / 1024 for copying the page pointers
+    // of the graph and its reverse. The nouns add time proportional to the synsets they were already in, and once the nouns
+    // added since the last compaction exceed an eighth of the noun index, it is rebuilt in time
+    // proportional to all nouns and their synsets
+    public synchronized int addSynset(String[] nouns, String gloss) {
+        if (nouns == null || nouns.length == 0) throw new IllegalArgumentException("a synset needs at least one noun");
+        for (String noun: nouns) {
+            if (noun == null || noun.isEmpty() || noun.indexOf(' ') != -1 || noun.indexOf(',') != -1 || noun.indexOf('\n') != -1) {
+                throw new IllegalArgumentException("not a valid noun: " + noun);
             }
         }
+
+        State s = this.state;
+        int id = s.graph.V();
+
+        CompactDigraph graph = s.graph.withVertex();
+        this.state = new State(s.synsets.withSynset(String.join(" ", nouns), gloss == null ? "" : gloss), graph,
+                s.hyponyms.withVertex(), s.nounIndex.withSynset(id, nouns), s.index, s.roots+1, s.rootSum+id);
+        return id;
     }
 
-    private void buildGraph(String filename, int v) {
-        In in = new In(filename);
-        this.graph = new Digraph(v);
+    // makes hypernym a hypernym of synset; rejected if synset is already an ancestor of hypernym,
+    // since the edge would then close a cycle. The cycle check walks the ancestors of hypernym,
+    // and only the indexed ancestor lists and cached results of synset and its descendants,
+    // the synsets whose ancestors change, are invalidated. Adding the edge itself costs amortized
+    // time proportional to the degrees of its two ends plus V / 1024
+    public synchronized void addHypernym(int synset, int hypernym) {
+        State s = this.state;
+        int n = s.graph.V();
+        if (synset < 0 || synset >= n) throw new IllegalArgumentException("synset " + synset + " is not between 0 and " + (n-1));
+        if (hypernym < 0 || hypernym >= n) throw new IllegalArgumentException("synset " + hypernym + " is not between 0 and " + (n-1));
+
+        if (synset == hypernym || s.sapEngine.pin(hypernym).distanceTo(synset) != -1) {
+            throw new IllegalArgumentException("hypernym " + synset + " -> " + hypernym + " would create a cycle");
+        }
+
+        boolean root = s.graph.outdegree(synset) == 0;
+        CompactDigraph hyponyms = s.hyponyms.withEdge(hypernym, synset);
+        BitSet affected = descendants(hyponyms, synset);
+        AncestorIndex index = s.index == null ? null : s.index.withStale(affected);
+
+        this.state = new State(s.synsets, s.graph.withEdge(synset, hypernym), hyponyms, s.nounIndex, index,
+                root ? s.roots-1 : s.roots, root ? s.rootSum-synset : s.rootSum);
 
-        while (in.hasNextLine()) {
-            String[] s = in.readLine().split(",");
+        // after publishing, so a query that read the old version can no longer cache its result
+        SapCache current = this.cache;
+        if (current != null) current.invalidate(affected);
+    }
+
+    // v and every synset below it
+    private static BitSet descendants(CompactDigraph hyponyms, int v) {
+        BitSet marked = new BitSet();
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        marked.set(v);
+        queue[tail++] = v;
 
-            int synsetId = Integer.parseInt(s[0]);
+        while (head < tail) {
+            int first = queue[head++];
+            for (int e = hyponyms.firstEdge(first); e < hyponyms.lastEdge(first); e++) {
+                int nb = hyponyms.target(e);
+                if (marked.get(nb)) continue;
 
-            for (int i = 1; i < s.length; i++) {
-                this.graph.addEdge(synsetId, Integer.parseInt(s[i]));
+                marked.set(nb);
+                if (tail == queue.length) queue = Arrays.copyOf(queue, 2*tail);
+                queue[tail++] = nb;
             }
         }
-
-        in.close();
+        return marked;
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return this.nounMap.keySet();
+        return this.state.nounIndex.nouns();
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
         if (word == null) throw new IllegalArgumentException("argument value is null");
-        return nounMap.get(word) != null;
+        return this.state.nounIndex.find(word) != -1;
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (!this.isNoun(nounA) || !this.isNoun(nounB)) throw new IllegalArgumentException("argument value is null");
+        // the cache's epoch has to be read before the version it will be checked against
+        SapCache current = this.cache;
+        long epoch = current == null ? 0 : current.epoch();
+        State s = this.state;
+
+        int a = s.find(nounA);
+        int b = s.find(nounB);
 
-        if (nounA.equals(nounB)) return 0;
+        if (a == b) return 0;
 
-        List<Integer> l1 = this.nounMap.get(nounA);
-        List<Integer> l2 = this.nounMap.get(nounB);
-        SAP sap = new SAP(this.graph);
-        return sap.length(l1, l2);
+        return SAP.lengthOf(query(s, current, epoch, a, b));
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
-    // in a shortest ancestral path (defined below)
+    // in a shortest ancestral path (defined below); null if they have no common ancestor, which
+    // can happen once addSynset() has added a synset that has no hypernyms
     public String sap(String nounA, String nounB) {
-        if (!this.isNoun(nounA) || !this.isNoun(nounB)) throw new IllegalArgumentException("argument value is null");
+        SapCache current = this.cache;
+        long epoch = current == null ? 0 : current.epoch();
+        State s = this.state;
+
+        int a = s.find(nounA);
+        int b = s.find(nounB);
+
+        int ind = SAP.ancestorOf(query(s, current, epoch, a, b));
+        return ind == -1 ? null : s.synsets.nouns(ind);
+    }
+
+    // distances between every pair of the given nouns: result[i][j] == distance(nouns[i], nouns[j]).
+    // Each unordered pair of distinct synset sets is computed once, every row shares a single
+    // traversal of its noun's ancestors (SAP.pin), and the rows are spread across the fork-join common pool
+    public int[][] distances(String[] nouns) {
+        if (nouns == null) throw new IllegalArgumentException("argument value is null");
+
+        State s = this.state;
+
+        // nouns sharing a synset set (e.g. repeated nouns) share a row
+        Map<List<Integer>, Integer> rowOf = new HashMap<>();
+        List<List<Integer>> sets = new ArrayList<>();
+        int[] row = new int[nouns.length];
+        for (int i = 0; i < nouns.length; i++) {
+            List<Integer> set = s.nounIndex.synsets(s.find(nouns[i]));
+            Integer r = rowOf.get(set);
+            if (r == null) {
+                r = sets.size();
+                rowOf.put(set, r);
+                sets.add(set);
+            }
+            row[i] = r;
+        }
+
+        int m = sets.size();
+        int[][] unique = new int[m][m];
+        IntStream.range(0, m).parallel().forEach(i -> {
+            SAP.Source source = s.sapEngine.pin(sets.get(i));
+            for (int j = i+1; j < m; j++) {
+                int dis = source.length(sets.get(j));
+                unique[i][j] = dis;
+                unique[j][i] = dis;
+            }
+        });
+
+        int[][] result = new int[nouns.length][nouns.length];
+        for (int i = 0; i < nouns.length; i++) {
+            for (int j = 0; j < nouns.length; j++) {
+                result[i][j] = unique[row[i]][row[j]];
+            }
+        }
+        return result;
+    }
+
+    // the k nouns closest to noun by distance(), nearest first (ties in no particular order);
+    // fewer if not enough nouns share an ancestor with it. Only the part of the graph within
+    // the k-th distance of noun is explored
+    public List<String> nearest(String noun, int k) {
+        State s = this.state;
+        int i = s.find(noun);
+        if (k < 0) throw new IllegalArgumentException("k is negative");
+
+        // built on first use of each version; building it twice in a race is harmless
+        NounNeighbors current = s.neighbors;
+        if (current == null) {
+            current = new NounNeighbors(s.graph, s.hyponyms, s.nounIndex);
+            s.neighbors = current;
+        }
+        return current.nearest(i, k);
+    }
+
+    // caches the results of distance() and sap() in a cache of the given capacity and eviction
+    // policy, replacing any previous cache
+    public void enableCache(int capacity, SapCache.Policy policy) {
+        this.cache = new SapCache(capacity, policy);
+    }
+
+    public void disableCache() {
+        this.cache = null;
+    }
+
+    // the cache in use, for its hit/miss/eviction counters; null if caching is disabled
+    public SapCache cache() {
+        return this.cache;
+    }
+
+    // length of the shortest path from any of the noun's synsets up to the root; -1 unless the
+    // hypernyms have exactly one root. Every pair of nouns then shares that root as an ancestor,
+    // so distance(a, b) <= rootDistance(a) + rootDistance(b)
+    int rootDistance(String noun) {
+        State s = this.state;
+        int i = s.find(noun);
+        if (s.roots != 1) return -1;
+
+        return s.sapEngine.pin(s.nounIndex.synsets(i)).distanceTo((int) s.rootSum);
+    }
+
+    // packed SAP result for the synsets of two nouns of version s, served from the cache when
+    // enabled; epoch is the cache's epoch read before s
+    private static long query(State s, SapCache cache, long epoch, int nounA, int nounB) {
+        NounIndex nounIndex = s.nounIndex;
+        int[] postingsA = nounIndex.postings(nounA);
+        int[] postingsB = nounIndex.postings(nounB);
+        int fromA = nounIndex.firstSynset(nounA);
+        int toA = nounIndex.lastSynset(nounA);
+        int fromB = nounIndex.firstSynset(nounB);
+        int toB = nounIndex.lastSynset(nounB);
 
-        List<Integer> l1 = this.nounMap.get(nounA);
-        List<Integer> l2 = this.nounMap.get(nounB);
+        if (cache == null) return s.sapEngine.query(postingsA, fromA, toA, postingsB, fromB, toB);
 
-        SAP sap = new SAP(this.graph);
-        int ind = sap.ancestor(l1, l2);
-        return String.join(" ", this.synsets[ind].getSet());
+        // postings are sorted, so the copies are canonical keys
+        SapCache.Key key = new SapCache.Key(Arrays.copyOfRange(postingsA, fromA, toA), Arrays.copyOfRange(postingsB, fromB, toB));
+        long result = cache.get(key);
+        if (result == SapCache.ABSENT) {
+            result = s.sapEngine.query(postingsA, fromA, toA, postingsB, fromB, toB);
+            cache.put(key, result, epoch);
+        }
+        return result;
     }
 
-    private class Synset {
-        private final int id;
-        private final String[] set;
-        private final String gloss;
+    // one version of everything a query reads; never modified once published
+    private static final class State {
+        private final WordNetFiles.Synsets synsets;
+        private final CompactDigraph graph;
+        // graph reversed, built with it and updated alongside it
+        private final CompactDigraph hyponyms;
+        private final NounIndex nounIndex;
+        private final AncestorIndex index;
+        // built once per version and shared by every query; the graph is immutable and SAP's
+        // per-query scratch space is thread-local, so it is safe to call from any thread
+        private final SAP sapEngine;
+        // the number of synsets without hypernyms and the sum of their ids, which is the root
+        // itself when there is only one
+        private final int roots;
+        private final long rootSum;
+        private volatile NounNeighbors neighbors;
+
+        State(WordNetFiles.Synsets synsets, CompactDigraph graph, CompactDigraph hyponyms,
+              NounIndex nounIndex, AncestorIndex index, int roots, long rootSum) {
+            this.synsets = synsets;
+            this.graph = graph;
+            this.hyponyms = hyponyms;
+            this.nounIndex = nounIndex;
+            this.index = index;
+            this.sapEngine = new SAP(graph, index);
+            this.roots = roots;
+            this.rootSum = rootSum;
+        }
+
+        static State load(WordNetFiles.Synsets synsets, CompactDigraph graph, NounIndex nounIndex, int maxIndexedAncestors) {
+            AncestorIndex index = maxIndexedAncestors > 0 ? new AncestorIndex(graph, maxIndexedAncestors) : null;
+
+            int roots = 0;
+            long rootSum = 0;
+            for (int v = 0; v < graph.V(); v++) {
+                if (graph.outdegree(v) > 0) continue;
+                roots++;
+                rootSum += v;
+            }
+            return new State(synsets, graph, graph.reverse(), nounIndex, index, roots, rootSum);
+        }
+
+        // ordinal of a noun in the noun index
+        int find(String noun) {
+            if (noun == null) throw new IllegalArgumentException("argument value is null");
 
-        public Synset(int id, String[] set, String gloss) {
-            this.id = id;
-            this.set = Arrays.copyOf(set, set.length);
-            this.gloss = gloss;
+            int i = this.nounIndex.find(noun);
+            if (i == -1) throw new IllegalArgumentException("not a WordNet noun: " + noun);
+            return i;
         }
+    }
+
+    // do unit testing of this class: answers random noun pairs on one thread, then checks that
+    // many threads querying the same WordNet at once, with and without the cache, get the same
+    // distances and (uncached) the same ancestors, and finally that live updates are seen
+    public static void main(String[] args) throws Exception {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int pairs = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
 
-        public int getId() {
-            return id;
+        List<String> nouns = new ArrayList<>();
+        for (String noun: wordnet.nouns()) nouns.add(noun);
+
+        Random random = new Random(42);
+        String[] a = new String[pairs];
+        String[] b = new String[pairs];
+        int[] distance = new int[pairs];
+        String[] ancestor = new String[pairs];
+        for (int i = 0; i < pairs; i++) {
+            a[i] = nouns.get(random.nextInt(nouns.size()));
+            b[i] = nouns.get(random.nextInt(nouns.size()));
+            distance[i] = wordnet.distance(a[i], b[i]);
+            ancestor[i] = wordnet.sap(a[i], b[i]);
         }
 
-        public String[] getSet() {
-            return set;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (boolean cached: new boolean[] {false, true}) {
+            if (cached) wordnet.enableCache(Math.max(1, pairs/4), SapCache.Policy.LRU);
+
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                results.add(pool.submit(() -> {
+                    // every thread walks the pairs in its own order so queries interleave differently
+                    List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < pairs; i++) order.add(i);
+                    Collections.shuffle(order, new Random(seed));
+
+                    int mismatches = 0;
+                    for (int i: order) {
+                        if (wordnet.distance(a[i], b[i]) != distance[i]) mismatches++;
+                        else if (!cached && !wordnet.sap(a[i], b[i]).equals(ancestor[i])) mismatches++;
+                    }
+                    return mismatches;
+                }));
+            }
+
+            int mismatches = 0;
+            for (Future<Integer> result: results) mismatches += result.get();
+            StdOut.printf("%d threads x %d pairs, cache %s: %d mismatches\n", threads, pairs, cached ? wordnet.cache() : "off", mismatches);
+            if (mismatches != 0) throw new IllegalStateException("concurrent queries disagree with serial ones");
         }
+        pool.shutdown();
 
-        public String getGloss() {
-            return gloss;
+        // a synset added under one of a noun's synsets is one edge away from it, the edge back is
+        // refused, and the cached result for the pair is dropped once the edge exists
+        String parentNoun = a[0];
+        int parent = wordnet.state.nounIndex.synsets(wordnet.state.find(parentNoun)).get(0);
+        int child = wordnet.addSynset(new String[] {"wordnet_main_check"}, "added by WordNet.main");
+        if (wordnet.distance("wordnet_main_check", parentNoun) != -1) throw new IllegalStateException("new synset is already connected");
+        wordnet.addHypernym(child, parent);
+        if (wordnet.distance("wordnet_main_check", parentNoun) != 1) throw new IllegalStateException("new hypernym edge not seen");
+        try {
+            wordnet.addHypernym(parent, child);
+            throw new IllegalStateException("cycle not rejected");
+        }
+        catch (IllegalArgumentException expected) {
+            StdOut.printf("added synset %d under %s: distance 1, reverse edge rejected\n", child, parentNoun);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,329 @@
+import edu.princeton.cs.algs4.In;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Streaming parsers for the WordNet synsets and hypernyms files.
+//
+// Files on disk are memory-mapped and parsed straight from the bytes: ids and edges are read
+// as digits without creating a String per line, and each noun is decoded once and interned.
+// The synset field and gloss of every synset are kept only as offsets into the mapped file
+// and decoded on demand. Names that aren't plain files (class path resources and URLs, as In
+// accepts them) are read byte for byte into a heap buffer and parsed the same way; they are
+// never decoded as text first, so binary snapshots load from them unchanged.
+final class WordNetFiles {
+
+    private WordNetFiles() { }
+
+    // the offsets of every synset in a synsets file, plus the nouns it names. Synsets added
+    // later by withSynset() are held as Strings after the file's, in arrays shared by every
+    // version and written only past the slots earlier versions can see
+    static final class Synsets {
+        private final ByteBuffer data;
+        private final int[] nounStart;
+        private final int[] nounEnd;
+        private final int[] glossEnd;
+        private final String[] addedNouns;
+        private final String[] addedGlosses;
+        private final int added;
+
+        Synsets(ByteBuffer data, int[] nounStart, int[] nounEnd, int[] glossEnd) {
+            this(data, nounStart, nounEnd, glossEnd, new String[0], new String[0], 0);
+        }
+
+        private Synsets(ByteBuffer data, int[] nounStart, int[] nounEnd, int[] glossEnd,
+                        String[] addedNouns, String[] addedGlosses, int added) {
+            this.data = data;
+            this.nounStart = nounStart;
+            this.nounEnd = nounEnd;
+            this.glossEnd = glossEnd;
+            this.addedNouns = addedNouns;
+            this.addedGlosses = addedGlosses;
+            this.added = added;
+        }
+
+        int size() {
+            return this.nounStart.length + this.added;
+        }
+
+        // these synsets plus one numbered size(); only call it on the latest version
+        Synsets withSynset(String nouns, String gloss) {
+            String[] addedNouns = this.addedNouns;
+            String[] addedGlosses = this.addedGlosses;
+            if (this.added == addedNouns.length) {
+                addedNouns = Arrays.copyOf(addedNouns, Math.max(16, 2*this.added));
+                addedGlosses = Arrays.copyOf(addedGlosses, addedNouns.length);
+            }
+            addedNouns[this.added] = nouns;
+            addedGlosses[this.added] = gloss;
+            return new Synsets(this.data, this.nounStart, this.nounEnd, this.glossEnd, addedNouns, addedGlosses, this.added+1);
+        }
+
+        // the second field of the synset's line: its nouns, separated by spaces
+        String nouns(int id) {
+            if (id >= this.nounStart.length) return this.addedNouns[id-this.nounStart.length];
+            return decode(this.data, this.nounStart[id], this.nounEnd[id]);
+        }
+
+        // the raw bytes of the synset's second field
+        byte[] nounBytes(int id) {
+            if (id >= this.nounStart.length) return nouns(id).getBytes(StandardCharsets.UTF_8);
+            return bytes(this.data, this.nounStart[id], this.nounEnd[id]);
+        }
+
+        // the raw bytes of the synset's third field
+        byte[] glossBytes(int id) {
+            if (id >= this.nounStart.length) return gloss(id).getBytes(StandardCharsets.UTF_8);
+            return bytes(this.data, Math.min(this.nounEnd[id]+1, this.glossEnd[id]), this.glossEnd[id]);
+        }
+
+        // the third field of the synset's line
+        String gloss(int id) {
+            if (id >= this.nounStart.length) return this.addedGlosses[id-this.nounStart.length];
+            // a line without a gloss has glossEnd == nounEnd
+            return decode(this.data, Math.min(this.nounEnd[id]+1, this.glossEnd[id]), this.glossEnd[id]);
+        }
+    }
+
+    // parses "id,noun noun ...,gloss" lines; the synsets are numbered 0 to (number of lines - 1)
+    static Synsets readSynsets(String filename) {
+        ByteBuffer data = map(filename);
+        int limit = data.limit();
+
+        int lines = 0;
+        for (int p = 0; p < limit; p++) {
+            if (data.get(p) == '\n') lines++;
+        }
+        if (limit > 0 && data.get(limit-1) != '\n') lines++;
+
+        int[] nounStart = new int[lines];
+        int[] nounEnd = new int[lines];
+        int[] glossEnd = new int[lines];
+        boolean[] seen = new boolean[lines];
+
+        int p = 0;
+        for (int line = 0; line < lines; line++) {
+            int end = lineEnd(data, p, limit);
+            int comma = indexOf(data, ',', p, end);
+            if (comma == -1) throw new IllegalArgumentException("bad synsets line " + (line+1) + " in " + filename);
+
+            int id = parseInt(data, p, comma, filename);
+            if (id < 0 || id >= lines || seen[id]) throw new IllegalArgumentException("bad synset id " + id + " in " + filename);
+            seen[id] = true;
+
+            int fieldEnd = indexOf(data, ',', comma+1, end);
+            if (fieldEnd == -1) fieldEnd = end;
+            nounStart[id] = comma+1;
+            nounEnd[id] = fieldEnd;
+            glossEnd[id] = end;
+
+            p = nextLine(data, end, limit);
+        }
+
+        return new Synsets(data, nounStart, nounEnd, glossEnd);
+    }
+
+    // indexes every noun named by the synsets' noun fields
+    static NounIndex indexNouns(Synsets synsets) {
+        ByteBuffer data = synsets.data;
+        int[] nounOf = new int[synsets.size()+1];
+        int[] synsetOf = new int[synsets.size()+1];
+        int pairs = 0;
+
+        // nouns recur across synsets, so decode each distinct one only once
+        Map<ByteKey, Integer> ids = new HashMap<>();
+        List<String> nouns = new ArrayList<>();
+        ByteKey probe = new ByteKey(data);
+
+        for (int id = 0; id < synsets.nounStart.length; id++) {
+            int start = synsets.nounStart[id];
+            int fieldEnd = synsets.nounEnd[id];
+
+            while (start < fieldEnd) {
+                int space = indexOf(data, ' ', start, fieldEnd);
+                if (space == -1) space = fieldEnd;
+
+                if (space > start) {
+                    Integer noun = ids.get(probe.set(start, space));
+                    if (noun == null) {
+                        noun = nouns.size();
+                        nouns.add(decode(data, start, space));
+                        ids.put(new ByteKey(data).set(start, space), noun);
+                    }
+
+                    if (pairs == nounOf.length) {
+                        nounOf = Arrays.copyOf(nounOf, 2*pairs);
+                        synsetOf = Arrays.copyOf(synsetOf, 2*pairs);
+                    }
+                    nounOf[pairs] = noun;
+                    synsetOf[pairs] = id;
+                    pairs++;
+                }
+                start = space+1;
+            }
+        }
+
+        return NounIndex.build(nouns.toArray(new String[0]), nounOf, synsetOf, pairs);
+    }
+
+    // parses "synset,hypernym,hypernym,..." lines into a digraph on V vertices
+    static CompactDigraph readHypernyms(String filename, int V) {
+        ByteBuffer data = map(filename);
+        int limit = data.limit();
+
+        int[] from = new int[V+1];
+        int[] to = new int[V+1];
+        int e = 0;
+
+        int p = 0;
+        while (p < limit) {
+            int end = lineEnd(data, p, limit);
+            int comma = indexOf(data, ',', p, end);
+            if (comma == -1) comma = end;
+
+            if (comma > p) {
+                int synsetId = parseInt(data, p, comma, filename);
+
+                int start = comma+1;
+                while (start < end) {
+                    int next = indexOf(data, ',', start, end);
+                    if (next == -1) next = end;
+
+                    if (e == from.length) {
+                        from = Arrays.copyOf(from, 2*e);
+                        to = Arrays.copyOf(to, 2*e);
+                    }
+                    from[e] = synsetId;
+                    to[e] = parseInt(data, start, next, filename);
+                    e++;
+                    start = next+1;
+                }
+            }
+
+            p = nextLine(data, end, limit);
+        }
+
+        return new CompactDigraph(V, from, to, e);
+    }
+
+    static ByteBuffer map(String filename) {
+        File file = new File(filename);
+        if (!file.isFile()) return ByteBuffer.wrap(readAllBytes(filename));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + filename, e);
+        }
+    }
+
+    // the bytes of a class path resource or a URL, looked up in the same order as In does
+    private static byte[] readAllBytes(String name) {
+        try {
+            URL url = In.class.getResource(name);
+            if (url == null) url = In.class.getClassLoader().getResource(name);
+            if (url == null) url = new URL(name);
+
+            try (InputStream stream = url.openStream()) {
+                return stream.readAllBytes();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + name, e);
+        }
+    }
+
+    // end of the line starting at p, excluding any "\r\n" or "\n"
+    private static int lineEnd(ByteBuffer data, int p, int limit) {
+        int end = indexOf(data, '\n', p, limit);
+        if (end == -1) end = limit;
+        if (end > p && data.get(end-1) == '\r') end--;
+        return end;
+    }
+
+    private static int nextLine(ByteBuffer data, int end, int limit) {
+        if (end < limit && data.get(end) == '\r') end++;
+        return end+1;
+    }
+
+    private static int indexOf(ByteBuffer data, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data.get(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private static int parseInt(ByteBuffer data, int from, int to, String filename) {
+        if (from >= to) throw new IllegalArgumentException("missing number in " + filename);
+
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = data.get(i)-'0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE-digit)/10) {
+                throw new IllegalArgumentException("bad number \"" + decode(data, from, to) + "\" in " + filename);
+            }
+            value = 10*value+digit;
+        }
+        return value;
+    }
+
+    private static String decode(ByteBuffer data, int from, int to) {
+        return new String(bytes(data, from, to), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(ByteBuffer data, int from, int to) {
+        byte[] bytes = new byte[Math.max(0, to-from)];
+        data.get(from, bytes);
+        return bytes;
+    }
+
+    // a byte range of the buffer, hashed and compared by content
+    private static final class ByteKey {
+        private final ByteBuffer data;
+        private int from;
+        private int to;
+        private int hash;
+
+        ByteKey(ByteBuffer data) {
+            this.data = data;
+        }
+
+        ByteKey set(int from, int to) {
+            this.from = from;
+            this.to = to;
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31*h + this.data.get(i);
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ByteKey)) return false;
+
+            ByteKey other = (ByteKey) o;
+            if (other.to-other.from != this.to-this.from) return false;
+            for (int i = this.from, j = other.from; i < this.to; i++, j++) {
+                if (this.data.get(i) != other.data.get(j)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
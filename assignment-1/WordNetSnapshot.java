@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Versioned binary image of a loaded WordNet, so a process can start without re-parsing the
+// text files or re-validating the graph.
+//
+// Layout (little-endian ints; every byte section is padded to a multiple of 4):
+//
+//   magic "WNS1", version, flags (bit 0: the graph was validated acyclic)
+//   V, E, offsets[V+1], targets[E]                         hypernym graph in CSR form
+//   V, nounStart[V], nounEnd[V], glossEnd[V], bytes        synset fields and glosses
+//   N, start[N+1], postingStart[N+1], postings[], chars  the noun index: sorted nouns as
+//                                                          UTF-16 chars, with their synsets
+//
+// The snapshot is memory-mapped on load. The synset text section is used in place, so
+// glosses and synset fields stay on disk until sap() asks for one; the int and char
+// sections are copied out with bulk transfers straight into the arrays the graph and the
+// noun index use, so loading does no parsing or per-noun work beyond hashing.
+final class WordNetSnapshot {
+
+    private static final int MAGIC = 0x31534e57;  // "WNS1"
+    private static final int VERSION = 2;
+    private static final int ACYCLIC = 1;
+
+    final WordNetFiles.Synsets synsets;
+    final CompactDigraph graph;
+    final NounIndex nounIndex;
+    final boolean acyclic;
+
+    private WordNetSnapshot(WordNetFiles.Synsets synsets, CompactDigraph graph, NounIndex nounIndex, boolean acyclic) {
+        this.synsets = synsets;
+        this.graph = graph;
+        this.nounIndex = nounIndex;
+        this.acyclic = acyclic;
+    }
+
+    static void write(String filename, WordNetFiles.Synsets synsets, CompactDigraph graph, NounIndex nounIndex) {
+        int n = graph.V();
+        nounIndex = nounIndex.compacted();
+
+        byte[][] nounFields = new byte[n][];
+        byte[][] glosses = new byte[n][];
+        int textBytes = 0;
+        for (int id = 0; id < n; id++) {
+            nounFields[id] = synsets.nounBytes(id);
+            glosses[id] = synsets.glossBytes(id);
+            textBytes += nounFields[id].length+1+glosses[id].length;
+        }
+
+        int nounCount = nounIndex.size();
+        char[] pool = nounIndex.pool();
+        int[] postings = nounIndex.postings();
+
+        long size = 4L*(3 + 2 + (n+1) + graph.E())
+                + 4L*(1 + 3*n) + padded(textBytes)
+                + 4L*(1 + 2*(nounCount+1) + postings.length) + padded(2*pool.length);
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("WordNet too large for a snapshot");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(ACYCLIC);
+
+        // a graph that has been updated has holes in its edge array, so write it out compactly
+        out.putInt(n).putInt(graph.E());
+        int edge = 0;
+        for (int v = 0; v < n; v++) {
+            out.putInt(edge);
+            edge += graph.outdegree(v);
+        }
+        out.putInt(edge);
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstEdge(v); e < graph.lastEdge(v); e++) out.putInt(graph.target(e));
+        }
+
+        out.putInt(n);
+        int offset = 0;
+        for (int id = 0; id < n; id++) {
+            out.putInt(offset);
+            offset += nounFields[id].length+1+glosses[id].length;
+        }
+        offset = 0;
+        for (int id = 0; id < n; id++) {
+            out.putInt(offset+nounFields[id].length);
+            offset += nounFields[id].length+1+glosses[id].length;
+        }
+        offset = 0;
+        for (int id = 0; id < n; id++) {
+            offset += nounFields[id].length+1+glosses[id].length;
+            out.putInt(offset);
+        }
+        for (int id = 0; id < n; id++) {
+            out.put(nounFields[id]).put((byte) ',').put(glosses[id]);
+        }
+        pad(out, textBytes);
+
+        out.putInt(nounCount);
+        for (int start: nounIndex.starts()) out.putInt(start);
+        for (int start: nounIndex.postingStarts()) out.putInt(start);
+        for (int id: postings) out.putInt(id);
+        for (char c: pool) out.putChar(c);
+        pad(out, 2*pool.length);
+
+        out.flip();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) channel.write(out);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not write " + filename, e);
+        }
+    }
+
+    static WordNetSnapshot read(String filename) {
+        ByteBuffer in = WordNetFiles.map(filename).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (in.getInt() != MAGIC) throw new IllegalArgumentException(filename + " is not a WordNet snapshot");
+            int version = in.getInt();
+            if (version != VERSION) throw new IllegalArgumentException("unsupported snapshot version " + version + " in " + filename);
+            int flags = in.getInt();
+
+            int n = in.getInt();
+            int e = in.getInt();
+            int[] offsets = ints(in, n+1);
+            int[] targets = ints(in, e);
+            CompactDigraph graph = new CompactDigraph(offsets, targets);
+
+            if (in.getInt() != n) throw new IllegalArgumentException("corrupt snapshot " + filename);
+            int[] nounStart = ints(in, n);
+            int[] nounEnd = ints(in, n);
+            int[] glossEnd = ints(in, n);
+            int textBytes = n == 0 ? 0 : glossEnd[n-1];
+            for (int id = 0; id < n; id++) {
+                if (nounStart[id] < 0 || nounStart[id] > nounEnd[id] || nounEnd[id] > glossEnd[id] || glossEnd[id] > textBytes) {
+                    throw new IllegalArgumentException("corrupt snapshot " + filename);
+                }
+            }
+            ByteBuffer text = in.slice(in.position(), textBytes);
+            in.position(in.position()+padded(textBytes));
+            WordNetFiles.Synsets synsets = new WordNetFiles.Synsets(text, nounStart, nounEnd, glossEnd);
+
+            int nounCount = in.getInt();
+            int[] start = ints(in, nounCount+1);
+            int[] postingStart = ints(in, nounCount+1);
+            int[] postings = ints(in, postingStart[nounCount]);
+            char[] pool = new char[start[nounCount]];
+            in.asCharBuffer().get(pool);
+            for (int id: postings) {
+                if (id < 0 || id >= n) throw new IllegalArgumentException("corrupt snapshot " + filename);
+            }
+            NounIndex nounIndex = new NounIndex(pool, start, postingStart, postings);
+
+            return new WordNetSnapshot(synsets, graph, nounIndex, (flags & ACYCLIC) != 0);
+        }
+        catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException) throw e;
+            throw new IllegalArgumentException("corrupt snapshot " + filename, e);
+        }
+    }
+
+    private static int[] ints(ByteBuffer in, int count) {
+        if (count < 0) throw new IllegalArgumentException("negative section length");
+
+        int[] values = new int[count];
+        IntBuffer view = in.asIntBuffer();
+        view.get(values);
+        in.position(in.position()+4*count);
+        return values;
+    }
+
+    private static int padded(int bytes) {
+        return (bytes+3) & ~3;
+    }
+
+    private static void pad(ByteBuffer out, int bytes) {
+        for (int i = bytes; i < padded(bytes); i++) out.put((byte) 0);
+    }
+}
@@ -0,0 +1,234 @@
+import edu.princeton.cs.algs4.Picture;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Seam carving for a sequence of video frames, all carved to the same size.
+//
+// Consecutive frames are usually nearly identical, so each frame starts from what the previous
+// one found:
+//  - a row's energy is copied from the previous frame when the row and the rows next to it
+//    hold the same pixels as before, as in a static background or letterboxing;
+//  - the k-th seam is only searched within radius pixels of the previous frame's k-th seam.
+//    That search is much cheaper than a full one, and it also keeps seams from jumping around
+//    between frames, which would show as jitter.
+// The first frame, a frame of a different size and a frame in which more than half the rows
+// changed (a scene cut) are carved from scratch with SeamCarver.resizeTo().
+//
+// run() carves a whole stream, with decoding and encoding overlapping the carving.
+public class FrameCarver {
+
+    // marks the end of the stream in run()'s queues
+    private static final CompletableFuture<Picture> END = CompletableFuture.completedFuture(null);
+
+    private final int width;
+    private final int height;
+    private final int radius;
+    // the previous frame before carving, and the seams carved from it; rgb is null before the
+    // first frame
+    private int[] rgb;
+    private double[] energy;
+    private int frameWidth;
+    private int frameHeight;
+    private int[][] seams;
+
+    // carves frames to width x height, searching within radius pixels of the previous seams
+    public FrameCarver(int width, int height, int radius) {
+
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Invalid size, width: "+width+" height: "+height);
+        if (radius < 0) throw new IllegalArgumentException("Invalid radius: "+radius);
+
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+    }
+
+    // the next frame of the sequence, carved
+    public Picture carve(Picture frame) {
+
+        if (frame == null) throw new IllegalArgumentException("Invalid frame");
+        if (frame.width() < width || frame.height() < height) {
+            throw new IllegalArgumentException("Frame smaller than "+width+"x"+height);
+        }
+
+        int w = frame.width();
+        int h = frame.height();
+        int[] pixels = new int[w*h];
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i++) {
+                pixels[j*w + i] = frame.getRGB(i, j) & 0xffffff;
+            }
+        }
+
+        boolean comparable = rgb != null && w == frameWidth && h == frameHeight;
+        boolean[] changed = new boolean[h];
+        int changes = 0;
+        for (int j = 0; j < h; j++) {
+            changed[j] = !comparable || !Arrays.equals(pixels, j*w, (j+1)*w, rgb, j*w, (j+1)*w);
+            if (changed[j]) changes++;
+        }
+
+        // a pixel's energy depends on its own row and the rows above and below it
+        double[] e = new double[w*h];
+        for (int j = 0; j < h; j++) {
+            if (!changed[j] && (j == 0 || !changed[j-1]) && (j == h-1 || !changed[j+1])) {
+                System.arraycopy(energy, j*w, e, j*w, w);
+            }
+            else {
+                SeamCarver.energyRow(pixels, w, w, h, j, e);
+            }
+        }
+
+        // the carver shifts its arrays in place, and the next frame compares against these
+        SeamCarver carver = new SeamCarver(pixels.clone(), e.clone(), w, h);
+        int[][] found;
+
+        if (comparable && changes <= h/2) {
+            found = new int[seams.length][];
+            int k = 0;
+            while (carver.width() > width) {
+                found[k] = carver.findVerticalSeam(seams[k], radius);
+                carver.removeVerticalSeam(found[k++]);
+            }
+            while (carver.height() > height) {
+                found[k] = carver.findHorizontalSeam(seams[k], radius);
+                carver.removeHorizontalSeam(found[k++]);
+            }
+        }
+        else {
+            found = carver.carveTo(width, height);
+        }
+
+        rgb = pixels;
+        energy = e;
+        frameWidth = w;
+        frameHeight = h;
+        seams = found;
+
+        return carver.picture();
+    }
+
+    // Carves a stream of frames. A reader thread takes the frames in order and decodes each on
+    // the common fork-join pool; the decoded frames are carved one at a time on the calling
+    // thread, since each starts from the one before; a writer thread encodes them. Each stage
+    // is at most capacity frames ahead of the next, so memory stays bounded, and encode gets the
+    // frames in input order. Anything thrown in any stage, errors included, stops the stream and
+    // is rethrown here, wrapped in an IllegalStateException unless it is a RuntimeException.
+    public <T> void run(Iterator<T> frames, Function<? super T, Picture> decode, Consumer<? super Picture> encode, int capacity) {
+
+        if (frames == null || decode == null || encode == null) throw new IllegalArgumentException("Invalid stage");
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity: "+capacity);
+
+        BlockingQueue<CompletableFuture<Picture>> decoded = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<CompletableFuture<Picture>> carved = new ArrayBlockingQueue<>(capacity);
+        // the first failure of the reader or the writer; its lock also guards done, so that a
+        // stage never interrupts the calling thread once run() is on its way out
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        boolean[] done = new boolean[1];
+        Thread carver = Thread.currentThread();
+        Consumer<Throwable> fail = t -> {
+            synchronized (failure) {
+                if (done[0] || failure.get() != null) return;
+                failure.set(t);
+                carver.interrupt();
+            }
+        };
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (frames.hasNext()) {
+                    T frame = frames.next();
+                    decoded.put(CompletableFuture.supplyAsync(() -> decode.apply(frame)));
+                }
+                decoded.put(END);
+            }
+            catch (InterruptedException e) {
+                // the stream was stopped
+            }
+            catch (Throwable t) {
+                fail.accept(t);
+            }
+        }, "frame-reader");
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (CompletableFuture<Picture> f = carved.take(); f != END; f = carved.take()) encode.accept(f.join());
+            }
+            catch (InterruptedException e) {
+                // the stream was stopped
+            }
+            catch (Throwable t) {
+                fail.accept(t);
+            }
+        }, "frame-writer");
+
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        try {
+            for (CompletableFuture<Picture> f = decoded.take(); f != END; f = decoded.take()) {
+                carved.put(CompletableFuture.completedFuture(carve(result(f))));
+            }
+            carved.put(END);
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            if (failure.get() == null) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+        }
+        finally {
+            synchronized (failure) {
+                done[0] = true;
+            }
+            reader.interrupt();
+            writer.interrupt();
+        }
+
+        Throwable t = failure.get();
+        if (t != null) {
+            // the interrupt that stopped this thread
+            Thread.interrupted();
+            throw unchecked(t);
+        }
+    }
+
+    // the decoded frame, or the decoder's failure
+    private static Picture result(CompletableFuture<Picture> f) {
+        try {
+            return f.join();
+        }
+        catch (CompletionException e) {
+            throw unchecked(e.getCause());
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable t) {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        return new IllegalStateException("frame pipeline stage failed", t);
+    }
+
+    // carves image files as frames of one sequence, saving each as carved-<name>:
+    // java FrameCarver width height radius frame1.png frame2.png ...
+    public static void main(String[] args) {
+        FrameCarver carver = new FrameCarver(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        List<String> files = Arrays.asList(args).subList(3, args.length);
+        Iterator<String> names = files.iterator();
+
+        carver.run(files.iterator(), Picture::new, picture -> {
+            File file = new File(names.next());
+            picture.save(new File(file.getParentFile(), "carved-" + file.getName()).getPath());
+        }, 4);
+    }
+}
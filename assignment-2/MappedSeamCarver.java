@@ -0,0 +1,435 @@
+import edu.princeton.cs.algs4.Picture;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// SeamCarver for pictures larger than the heap, such as gigapixel scans.
+//
+// The pixels (packed 0xRRGGBB ints), their energy (as floats) and the seam search's
+// back-pointers (one byte each) live in working files that are memory-mapped, so the heap only
+// holds a few rows at a time and the operating system pages the rest in and out. A mapping
+// can't exceed 2 GB, so each file is mapped in bands of whole rows. As in SeamCarver, the row
+// stride stays the original width and removing a seam shifts pixels in place.
+//
+// The vertical seam search streams down the rows, keeping two rows of distances. The
+// horizontal one goes across the columns, so it reads the energy in strips of columns, as
+// many as fit in 16 MB of heap, and runs the strip from memory.
+//
+// Pixel files are raw: width*height big-endian ints, row by row. Because the energy is stored
+// as floats, seams can differ from SeamCarver's where two paths cost the same to within float
+// precision; energy(x, y) itself is computed from the pixels and matches SeamCarver exactly.
+public class MappedSeamCarver implements AutoCloseable {
+
+    // the most bytes one mapping covers
+    private static final int BAND_BYTES = 1 << 30;
+    // heap bytes a horizontal seam search may use for one strip of columns
+    private static final int STRIP_BYTES = 1 << 24;
+
+    private int width;
+    private int height;
+    private final Path[] files;
+    private final Rows pixels;
+    private final Rows energy;
+    private final Rows edges;
+    private final int stripBytes;
+    // one row of bytes, for moving pixels around
+    private final byte[] scratch;
+
+    public MappedSeamCarver(Picture picture) {
+        this(picture, null, BAND_BYTES);
+    }
+
+    // the picture in a raw pixel file, with the working files in the default temporary directory
+    public MappedSeamCarver(Path pixels, int width, int height) {
+        this(pixels, width, height, null, BAND_BYTES);
+    }
+
+    // as above, with the working files in directory
+    public MappedSeamCarver(Path pixels, int width, int height, Path directory) {
+        this(pixels, width, height, directory, BAND_BYTES);
+    }
+
+    // the arguments are checked before the working files are created, and the files are deleted
+    // again if anything fails once they exist
+    MappedSeamCarver(Picture picture, Path directory, int bandBytes) {
+        this(checked(picture).width(), picture.height(), directory, bandBytes);
+
+        try {
+            for (int j = 0; j < height; j++) {
+                for (int i = 0; i < width; i++) {
+                    setPixel(i, j, picture.getRGB(i, j) & 0xffffff);
+                }
+            }
+            computeEnergy();
+        }
+        catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    MappedSeamCarver(Path pixels, int width, int height, Path directory, int bandBytes) {
+        this(checked(pixels, width, height), height, directory, bandBytes);
+
+        try (FileChannel in = FileChannel.open(pixels, StandardOpenOption.READ)) {
+            Rows source = new Rows(in, FileChannel.MapMode.READ_ONLY, height, width, 4, bandBytes);
+            for (int j = 0; j < height; j++) {
+                source.band(j).get(source.at(j, 0), scratch, 0, 4*width);
+                this.pixels.band(j).put(this.pixels.at(j, 0), scratch, 0, 4*width);
+            }
+            computeEnergy();
+        }
+        catch (IOException e) {
+            close();
+            throw new IllegalArgumentException("could not read " + pixels, e);
+        }
+        catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    // creates and maps the working files
+    private MappedSeamCarver(int width, int height, Path directory, int bandBytes) {
+
+        checkSize(width, height);
+
+        this.width = width;
+        this.height = height;
+        this.stripBytes = Math.min(bandBytes, STRIP_BYTES);
+        this.scratch = new byte[4*width];
+        this.files = new Path[3];
+
+        try {
+            String[] suffixes = {".pixels", ".energy", ".edges"};
+            for (int f = 0; f < files.length; f++) {
+                files[f] = directory == null ? Files.createTempFile("seam", suffixes[f]) : Files.createTempFile(directory, "seam", suffixes[f]);
+            }
+
+            // the mappings stay valid after their channels are closed
+            try (FileChannel p = open(files[0]); FileChannel e = open(files[1]); FileChannel b = open(files[2])) {
+                this.pixels = new Rows(p, FileChannel.MapMode.READ_WRITE, height, width, 4, bandBytes);
+                this.energy = new Rows(e, FileChannel.MapMode.READ_WRITE, height, width, 4, bandBytes);
+                this.edges = new Rows(b, FileChannel.MapMode.READ_WRITE, height, width, 1, bandBytes);
+            }
+        }
+        catch (IOException e) {
+            close();
+            throw new UncheckedIOException("could not create the working files", e);
+        }
+        catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static Picture checked(Picture picture) {
+        if (picture == null) throw new IllegalArgumentException("Invalid picture");
+        return picture;
+    }
+
+    // checks that pixels is a raw file of a width x height picture, and returns width
+    private static int checked(Path pixels, int width, int height) {
+        if (pixels == null) throw new IllegalArgumentException("Invalid pixel file");
+        checkSize(width, height);
+
+        try {
+            long size = Files.size(pixels);
+            if (size != 4L*width*height) {
+                throw new IllegalArgumentException(pixels + " holds " + size + " bytes, not " + 4L*width*height);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + pixels, e);
+        }
+        return width;
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Invalid size, width: "+width+" height: "+height);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // the current picture; only for pictures that fit in the heap
+    public Picture picture() {
+        Picture pic = new Picture(width, height);
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                pic.setRGB(i, j, pixel(i, j));
+            }
+        }
+        return pic;
+    }
+
+    // writes the current picture as a raw pixel file
+    public void write(Path file) {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int j = 0; j < height; j++) {
+                pixels.band(j).get(pixels.at(j, 0), scratch, 0, 4*width);
+                ByteBuffer row = ByteBuffer.wrap(scratch, 0, 4*width);
+                while (row.hasRemaining()) out.write(row);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not write " + file, e);
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public double energy(int x, int y) {
+
+        if (!isValidPixel(x, y)) throw new IllegalArgumentException("Invalid pixel, x: "+x+" y: "+y);
+
+        if (x == width-1 || x == 0 || y == 0 || y == height-1) return 1000;
+
+        return Math.sqrt(SeamCarver.gradient(pixel(x-1, y), pixel(x+1, y)) + SeamCarver.gradient(pixel(x, y-1), pixel(x, y+1)));
+    }
+
+    private void computeEnergy() {
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                setEnergy(i, j);
+            }
+        }
+    }
+
+    private int pixel(int x, int y) {
+        return pixels.band(y).getInt(pixels.at(y, x));
+    }
+
+    private void setPixel(int x, int y, int rgb) {
+        pixels.band(y).putInt(pixels.at(y, x), rgb);
+    }
+
+    private void setEnergy(int x, int y) {
+        energy.band(y).putFloat(energy.at(y, x), (float) energy(x, y));
+    }
+
+    public int[] findVerticalSeam() {
+
+        // two rows of distances padded with an infinite cell at each end, as in SeamCarver
+        double[] distTo = new double[width+2];
+        double[] next = new double[width+2];
+        distTo[0] = distTo[width+1] = Double.POSITIVE_INFINITY;
+        next[0] = next[width+1] = Double.POSITIVE_INFINITY;
+
+        for (int j = 1; j < height; j++) {
+            ByteBuffer cost = energy.band(j);
+            int costAt = energy.at(j, 0);
+            ByteBuffer edge = edges.band(j);
+            int edgeAt = edges.at(j, 0);
+
+            for (int i = 0; i < width; i++) {
+                double e = cost.getFloat(costAt + 4*i);
+                edge.put(edgeAt + i, SeamCarver.relaxCell(distTo, next, i+1, e));
+            }
+
+            double[] swap = distTo;
+            distTo = next;
+            next = swap;
+        }
+
+        int minCol = 0;
+        for (int i = 1; i < width; i++) {
+            if (distTo[i+1] < distTo[minCol+1]) minCol = i;
+        }
+
+        int[] out = new int[height];
+        out[height-1] = minCol;
+        for (int j = height-1; j > 0; j--) {
+            out[j-1] = out[j] + edges.band(j).get(edges.at(j, out[j]));
+        }
+
+        return out;
+    }
+
+    public int[] findHorizontalSeam() {
+
+        // here the search's rows are the picture's columns
+        double[] distTo = new double[height+2];
+        double[] next = new double[height+2];
+        distTo[0] = distTo[height+1] = Double.POSITIVE_INFINITY;
+        next[0] = next[height+1] = Double.POSITIVE_INFINITY;
+
+        // a strip holds a float of energy and a byte of back-pointer per pixel, column by column
+        int columns = Math.max(1, Math.min(width, stripBytes/(5*height)));
+        float[] cost = new float[columns*height];
+        byte[] steps = new byte[columns*height];
+
+        for (int first = 1; first < width; first += columns) {
+            int n = Math.min(columns, width-first);
+
+            for (int j = 0; j < height; j++) {
+                ByteBuffer band = energy.band(j);
+                int at = energy.at(j, first);
+                for (int k = 0; k < n; k++) cost[k*height + j] = band.getFloat(at + 4*k);
+            }
+
+            for (int k = 0; k < n; k++) {
+                for (int j = 0; j < height; j++) {
+                    steps[k*height + j] = SeamCarver.relaxCell(distTo, next, j+1, cost[k*height + j]);
+                }
+
+                double[] swap = distTo;
+                distTo = next;
+                next = swap;
+            }
+
+            for (int j = 0; j < height; j++) {
+                ByteBuffer band = edges.band(j);
+                int at = edges.at(j, first);
+                for (int k = 0; k < n; k++) band.put(at + k, steps[k*height + j]);
+            }
+        }
+
+        int minRow = 0;
+        for (int j = 1; j < height; j++) {
+            if (distTo[j+1] < distTo[minRow+1]) minRow = j;
+        }
+
+        int[] out = new int[width];
+        out[width-1] = minRow;
+        for (int i = width-1; i > 0; i--) {
+            out[i-1] = out[i] + edges.band(out[i]).get(edges.at(out[i], i));
+        }
+
+        return out;
+    }
+
+    public void removeHorizontalSeam(int[] seam) {
+
+        if (height <= 1) throw new IllegalArgumentException("width is less than or equal to 1");
+        if (!SeamCarver.isValidHorizontalSeam(seam, width, height)) throw new IllegalArgumentException("Invalid seam");
+
+        // each column loses one pixel; going row by row, the runs of columns whose seam entry is
+        // above the row move up one row
+        int first = height;
+        for (int i = 0; i < width; i++) first = Math.min(first, seam[i]);
+
+        for (int j = first; j < height-1; j++) {
+            int i = 0;
+            while (i < width) {
+                if (seam[i] > j) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < width && seam[i] <= j) i++;
+                pixels.move(j+1, j, start, i, start, scratch);
+                energy.move(j+1, j, start, i, start, scratch);
+            }
+        }
+
+        height--;
+
+        // only the pixels next to the seam see different neighbours
+        for (int i = 0; i < width; i++) {
+            if (seam[i]-1 >= 0) setEnergy(i, seam[i]-1);
+            if (seam[i] < height) setEnergy(i, seam[i]);
+        }
+    }
+
+    public void removeVerticalSeam(int[] seam) {
+
+        if (width <= 1) throw new IllegalArgumentException("Height is less than or equal to 1");
+        if (!SeamCarver.isValidVerticalSeam(seam, width, height)) throw new IllegalArgumentException("Invalid seam");
+
+        // each row loses one pixel; the pixels right of it move left one column
+        for (int j = 0; j < height; j++) {
+            pixels.move(j, j, seam[j]+1, width, seam[j], scratch);
+            energy.move(j, j, seam[j]+1, width, seam[j], scratch);
+        }
+
+        width--;
+
+        for (int j = 0; j < height; j++) {
+            if (seam[j]-1 >= 0) setEnergy(seam[j]-1, j);
+            if (seam[j] < width) setEnergy(seam[j], j);
+        }
+    }
+
+    private boolean isValidPixel(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    // deletes the working files; the carver can't be used afterwards
+    @Override
+    public void close() {
+        for (Path file: files) {
+            try {
+                if (file != null) Files.deleteIfExists(file);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("could not delete " + file, e);
+            }
+        }
+    }
+
+    // A file of rows of fixed-size elements, mapped in bands of whole rows
+    private static final class Rows {
+        private final ByteBuffer[] bands;
+        private final int rowsPerBand;
+        private final int rowBytes;
+        private final int elementBytes;
+
+        Rows(FileChannel channel, FileChannel.MapMode mode, int rows, int columns, int elementBytes, int bandBytes) throws IOException {
+            this.elementBytes = elementBytes;
+            this.rowBytes = columns*elementBytes;
+            this.rowsPerBand = Math.max(1, bandBytes/rowBytes);
+            this.bands = new ByteBuffer[(rows+rowsPerBand-1)/rowsPerBand];
+
+            for (int b = 0; b < bands.length; b++) {
+                long start = (long) b*rowsPerBand*rowBytes;
+                int size = Math.min(rowsPerBand, rows-b*rowsPerBand)*rowBytes;
+                bands[b] = channel.map(mode, start, size);
+            }
+        }
+
+        ByteBuffer band(int row) {
+            return bands[row/rowsPerBand];
+        }
+
+        // byte offset of element (row, column) in band(row)
+        int at(int row, int column) {
+            return (row%rowsPerBand)*rowBytes + column*elementBytes;
+        }
+
+        // copies columns [from, to) of row src to row dst, starting at column at
+        void move(int src, int dst, int from, int to, int at, byte[] scratch) {
+            int length = (to-from)*elementBytes;
+            band(src).get(at(src, from), scratch, 0, length);
+            band(dst).put(at(dst, at), scratch, 0, length);
+        }
+    }
+
+    // carves a raw pixel file down to the given size:
+    // java MappedSeamCarver in.raw width height newWidth newHeight out.raw
+    public static void main(String[] args) {
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        int newWidth = Integer.parseInt(args[3]);
+        int newHeight = Integer.parseInt(args[4]);
+
+        try (MappedSeamCarver carver = new MappedSeamCarver(Paths.get(args[0]), width, height)) {
+            while (carver.width() > newWidth) carver.removeVerticalSeam(carver.findVerticalSeam());
+            while (carver.height() > newHeight) carver.removeHorizontalSeam(carver.findHorizontalSeam());
+            carver.write(Paths.get(args[5]));
+        }
+    }
+}
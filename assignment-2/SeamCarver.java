@@ -1,282 +1,632 @@
 import edu.princeton.cs.algs4.Picture;
-
-import java.awt.Color;
-
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// The pixels are kept as packed 0xRRGGBB ints, row by row, rather than in a Picture: reading
+// a Picture pixel through get() allocates a Color, and the energy function reads four per pixel.
+// A Picture is only built when picture() asks for one.
+//
+// In parallel mode the energy is computed in tiles of rows and the seam search in bands of
+// rows, each band split into column chunks, on the common fork-join pool. Every cell is still
+// computed by the same arithmetic, so the seams are exactly those of the serial mode.
+//
+// When the JVM has the Vector API, the energy of whole rows and the seam search over rows of
+// contiguous pixels (vertical seams) run on SeamKernels instead of the scalar loops here.
 public class SeamCarver {
 
+    // null when the scalar loops are used
+    private static final SeamKernels KERNELS = SeamKernels.load();
+
+    // pictures smaller than this are always carved serially
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+    // rows per energy tile
+    private static final int TILE_ROWS = 16;
+    // rows per band of the parallel seam search; a chunk recomputes this many columns of its
+    // neighbours' on each side so that it doesn't wait for them row by row
+    private static final int BAND_ROWS = 32;
+    // the narrowest column chunk worth a task
+    private static final int MIN_CHUNK = 512;
+    // the two private rows of a chunk of the parallel seam search, one pair per worker thread,
+    // reused by every band and every search and grown when a chunk needs more
+    private static final ThreadLocal<double[][]> CHUNK_ROWS = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    // pixel (x, y) is rgb[y*rowStride + x], and its energy is energy[y*rowStride + x]. The
+    // stride is the original width and never changes: removing a seam shifts pixels within the
+    // same arrays and shrinks the logical width and height, so carving allocates nothing per seam
+    private final int[] rgb;
+    private final double[] energy;
+    private final int rowStride;
+    private int width;
+    private int height;
+    private final boolean parallel;
+    // back-pointers of the last seam search, one byte per pixel; allocated on the first search
+    private byte[] edgeTo;
+    // the current picture, built on demand; null until picture() is called after a change
     private Picture pic;
-    private double[][] energy;
-    private boolean isTraspose;
 
     public SeamCarver(Picture picture) {
+        this(picture, false);
+    }
+
+    // with parallel set, large pictures use all the cores of the common pool
+    public SeamCarver(Picture picture, boolean parallel) {
 
         if (picture == null) throw new IllegalArgumentException("Invalid picture");
 
-        pic = new Picture(picture);
+        this.parallel = parallel;
 
-        energy = new double[pic.width()][pic.height()];
+        width = picture.width();
+        height = picture.height();
+        rowStride = width;
+        rgb = new int[width*height];
 
-        for (int i = 0; i < pic.width(); i++) {
-            for (int j = 0; j < pic.height(); j++) {
-                energy[i][j] = energy(i, j);
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                rgb[j*rowStride + i] = picture.getRGB(i, j) & 0xffffff;
             }
         }
 
-        isTraspose = false;
+        energy = new double[width*height];
+
+        int tiles = (height+TILE_ROWS-1)/TILE_ROWS;
+        if (parallel && width*height >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, tiles).parallel().forEach(this::energyTile);
+        }
+        else {
+            for (int t = 0; t < tiles; t++) energyTile(t);
+        }
+    }
+
+    // a carver that takes over rgb and energy, both laid out like the pixels with stride width;
+    // FrameCarver fills in the energy with energyRow()
+    SeamCarver(int[] rgb, double[] energy, int width, int height) {
+        this.parallel = false;
+        this.rgb = rgb;
+        this.energy = energy;
+        this.width = width;
+        this.height = height;
+        this.rowStride = width;
+    }
+
+    private void energyTile(int tile) {
+        for (int j = tile*TILE_ROWS; j < Math.min(height, (tile+1)*TILE_ROWS); j++) {
+            energyRow(rgb, rowStride, width, height, j, energy);
+        }
+    }
+
+    // the energy of row j of a width x height picture, as energy(x, y) computes it
+    static void energyRow(int[] rgb, int stride, int width, int height, int j, double[] energy) {
+        int row = j*stride;
+
+        if (j == 0 || j == height-1 || width < 3) {
+            Arrays.fill(energy, row, row+width, 1000);
+            return;
+        }
+
+        energy[row] = 1000;
+        energy[row + width-1] = 1000;
+
+        if (KERNELS != null) {
+            KERNELS.energy(rgb, row, stride, 1, width-1, energy);
+            return;
+        }
+
+        for (int i = row+1; i < row+width-1; i++) {
+            energy[i] = Math.sqrt(gradient(rgb[i-1], rgb[i+1]) + gradient(rgb[i-stride], rgb[i+stride]));
+        }
     }
 
     public Picture picture() {
+        if (pic == null) {
+            pic = new Picture(width, height);
+            for (int j = 0; j < height; j++) {
+                for (int i = 0; i < width; i++) {
+                    pic.setRGB(i, j, rgb[j*rowStride + i]);
+                }
+            }
+        }
         return pic;
     }
 
     public int width() {
-        return pic.width();
+        return width;
     }
 
     public int height() {
-        return pic.height();
+        return height;
     }
 
     public double energy(int x, int y) {
         
         if (!isValidPixel(x, y)) throw new IllegalArgumentException("Invalid pixel, x: "+x+" y: "+y);
 
-        if (x == pic.width()-1 || x == 0 || y == 0 || y == pic.height()-1) return 1000;
+        if (x == width-1 || x == 0 || y == 0 || y == height-1) return 1000;
 
         return Math.sqrt(deltaX(x, y)+deltaY(x, y));
     }
 
     private double deltaX(int x, int y) {
-        Color colorL = pic.get(x-1, y);
-        Color colorR = pic.get(x+1, y);
-
-        int rx = colorL.getRed()-colorR.getRed();
-        int gx = colorL.getGreen()-colorR.getGreen();
-        int bx = colorL.getBlue()-colorR.getBlue();
-
-        return rx*rx + gx*gx + bx*bx;
+        return gradient(rgb[y*rowStride + x-1], rgb[y*rowStride + x+1]);
     }
 
     private double deltaY(int x, int y) {
-        Color colorT = pic.get(x, y-1);
-        Color colorB = pic.get(x, y+1);
+        return gradient(rgb[(y-1)*rowStride + x], rgb[(y+1)*rowStride + x]);
+    }
 
-        double ry = colorB.getRed()-colorT.getRed();
-        double gy = colorB.getGreen()-colorT.getGreen();
-        double by = colorB.getBlue()-colorT.getBlue();
+    // squared difference of two packed colours, summed over the channels
+    static int gradient(int a, int b) {
+        int r = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+        int g = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+        int bl = (a & 0xff) - (b & 0xff);
 
-        return ry*ry + gy*gy + by*by;
+        return r*r + g*g + bl*bl;
     }
 
     public int[] findHorizontalSeam() {
-
-        if (!isTraspose) this.transpose();
-
-        return findVertSeam();
+        return findSeam(false, null, 0);
     }
 
     public int[] findVerticalSeam() {
-        if (isTraspose) this.transpose();
-
-        return findVertSeam();
+        return findSeam(true, null, 0);
     }
 
-    private int[] findVertSeam() {
+    // the cheapest horizontal seam that stays within radius rows of near, a seam of the
+    // current picture; only those cells are searched
+    int[] findHorizontalSeam(int[] near, int radius) {
+        if (!isValidHorizontalSeam(near, width, height) || radius < 0) throw new IllegalArgumentException("Invalid search band");
 
-        int h = energy[0].length;
-        int w = energy.length;
+        return findSeam(false, near, radius);
+    }
 
-        double[][] disTo = new double[w][h];
-        int[][] edgeTo = new int[w][h];
+    // the cheapest vertical seam that stays within radius columns of near
+    int[] findVerticalSeam(int[] near, int radius) {
+        if (!isValidVerticalSeam(near, width, height) || radius < 0) throw new IllegalArgumentException("Invalid search band");
 
-        // initializing the distance
-        for (int i = 1; i < h; i++) {
-            for (int j = 0; j < w; j++) {
-                disTo[j][i] = Double.POSITIVE_INFINITY;
+        return findSeam(true, near, radius);
+    }
+
+    // The DP below is written for a vertical seam: it goes down h rows of w cells each. A
+    // horizontal seam is the same search over the transposed picture, so instead of copying the
+    // energy into that orientation the search walks the buffer with the steps swapped: cell
+    // (i, j) is energy[i*rowStep + j*colStep]. With near set, only the cells within radius of
+    // near[i] in each row i are searched
+    private int[] findSeam(boolean vertical, int[] near, int radius) {
+
+        int h = vertical ? height : width;
+        int w = vertical ? width : height;
+        int rowStep = vertical ? rowStride : 1;
+        int colStep = vertical ? 1 : rowStride;
+
+        // Each cell pulls from the cheapest of the three cells above it, so only the previous
+        // row of distances is needed. The rows are padded with an infinite cell at each end to
+        // spare the bounds checks. Ties go to the leftmost parent and the leftmost end, which
+        // picks the same seam as relaxing the edges from each cell in column order did
+        double[] distTo = new double[w+2];
+        double[] next = new double[w+2];
+        distTo[0] = distTo[w+1] = Double.POSITIVE_INFINITY;
+        next[0] = next[w+1] = Double.POSITIVE_INFINITY;
+
+        // edgeTo[i*w + j] is the column step (-1, 0 or +1) from cell (i, j) to its parent
+        if (edgeTo == null) edgeTo = new byte[rgb.length];
+
+        int chunks = Math.min(w/MIN_CHUNK, 4*ForkJoinPool.getCommonPoolParallelism());
+
+        if (near != null) {
+            distTo = band(distTo, next, near, Math.min(radius, w), h, w, rowStep, colStep);
+        }
+        else if (parallel && w*h >= PARALLEL_THRESHOLD && chunks > 1) {
+            for (int i = 1; i < h; i += BAND_ROWS) {
+                int first = i;
+                int rows = Math.min(BAND_ROWS, h-i);
+                double[] above = distTo;
+                double[] below = next;
+                IntStream.range(0, chunks).parallel().forEach(c ->
+                    band(above, below, first, rows, c*w/chunks, (c+1)*w/chunks, w, rowStep, colStep));
+
+                distTo = below;
+                next = above;
             }
         }
+        else {
+            for (int i = 1; i < h; i++) {
+                relaxRow(distTo, next, -1, i, 0, w, true, w, rowStep, colStep);
 
-        // processing here
-        for (int i = 0; i < h-1; i++) {
-            for (int j = 0; j < w; j++) {
-
-                if (j-1 >= 0 && disTo[j][i]+energy[j-1][i+1] < disTo[j-1][i+1]) {
-                    disTo[j-1][i+1] = disTo[j][i]+energy[j-1][i+1];
-                    edgeTo[j-1][i+1] = j;
-                }
-
-                if (disTo[j][i]+energy[j][i+1] < disTo[j][i+1]) {
-                    disTo[j][i+1] = disTo[j][i]+energy[j][i+1];
-                    edgeTo[j][i+1] = j;
-                }
-
-                if (j+1 < w && disTo[j][i]+energy[j+1][i+1] < disTo[j+1][i+1]) {
-                    disTo[j+1][i+1] = disTo[j][i]+energy[j+1][i+1];
-                    edgeTo[j+1][i+1] = j;
-                }
+                double[] swap = distTo;
+                distTo = next;
+                next = swap;
             }
         }
-        double min = disTo[0][h-1];
+
         int minCol = 0;
-        for (int i = 1; i < w; i++) {
-            if (disTo[i][h-1] < min) {
-                minCol = i;
-                min = disTo[i][h-1];
-            }
+        for (int j = 1; j < w; j++) {
+            if (distTo[j+1] < distTo[minCol+1]) minCol = j;
         }
+
         int[] out = new int[h];
-        for (int i = h-1; i >= 0; i--) {
-            out[i] = minCol;
-            minCol = edgeTo[minCol][i];
+        out[h-1] = minCol;
+        for (int i = h-1; i > 0; i--) {
+            out[i-1] = out[i] + edgeTo[i*w + out[i]];
         }
 
         return out;
     }
 
-    public void removeHorizontalSeam(int[] seam) {
-
-        if (pic.height() <= 1) throw new IllegalArgumentException("width is less than or equal to 1");
-        if (!isValidHorizontalSeam(seam)) throw new IllegalArgumentException("Invalid seam");
+    // The search restricted to a band around near. Cells outside the band stay infinite, so
+    // each array is cleared where it was written two rows before. Every cell in the band has a
+    // parent in the band above it, since near moves at most one column per row. Returns the
+    // array holding the last row
+    private double[] band(double[] distTo, double[] next, int[] near, int radius, int h, int w, int rowStep, int colStep) {
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        Arrays.fill(next, Double.POSITIVE_INFINITY);
+
+        // the columns written in distTo and in next
+        int lo = Math.max(0, near[0]-radius);
+        int hi = Math.min(w, near[0]+radius+1);
+        Arrays.fill(distTo, lo+1, hi+1, 0);
+        int nextLo = 0;
+        int nextHi = 0;
 
-        int w = pic.width();
-        int h = pic.height();
+        for (int i = 1; i < h; i++) {
+            int from = Math.max(0, near[i]-radius);
+            int to = Math.min(w, near[i]+radius+1);
+
+            Arrays.fill(next, nextLo+1, nextHi+1, Double.POSITIVE_INFINITY);
+            relaxRow(distTo, next, -1, i, from, to, true, w, rowStep, colStep);
+
+            double[] swap = distTo;
+            distTo = next;
+            next = swap;
+            nextLo = lo;
+            nextHi = hi;
+            lo = from;
+            hi = to;
+        }
 
-        Picture newPic = new Picture(w, h-1);
+        return distTo;
+    }
 
-        for (int i = 0; i < w; i++) {
-            int col = 0;
-            for (int j = 0; j < h; j++) {
-                if (seam[i] != j) {
-                    newPic.set(i, col, pic.get(i, j));
-                    col++;
-                }
-            }
+    // Relaxes columns [from, to) of row i from the distances of row i-1 in above into below,
+    // where column j is at index j-lo of both; the columns on either side of the ones relaxed
+    // hold distances (or infinity, outside the picture). With edges unset the back-pointers
+    // are left alone
+    private void relaxRow(double[] above, double[] below, int lo, int i, int from, int to, boolean edges,
+                          int w, int rowStep, int colStep) {
+        int cell = i*rowStep;
+        int edge = i*w;
+
+        if (KERNELS != null && colStep == 1) {
+            KERNELS.relax(above, below, from-lo, energy, cell+from, edges ? edgeTo : null, edge+from, to-from);
+            return;
         }
 
-        pic = newPic;
-
-        if (isTraspose) removeVerticalEnergy(seam);
-        else removeHorizontalEnergy(seam);
+        for (int j = from; j < to; j++) {
+            byte step = relaxCell(above, below, j-lo, energy[cell + j*colStep]);
+            if (edges) edgeTo[edge + j] = step;
+        }
     }
-    public void removeVerticalSeam(int[] seam) {
 
-        if (pic.width() <= 1) throw new IllegalArgumentException("Height is less than or equal to 1");
-        if (!isValidVerticalSeam(seam)) throw new IllegalArgumentException("Invalid seam");
+    // below[k] gets e plus the cheapest of above[k-1], above[k] and above[k+1], the leftmost on
+    // ties; returns the step to that parent. The sums are compared rather than the parents: two
+    // parents a few ulps apart can round to the same sum, and then the leftmost one has to win
+    static byte relaxCell(double[] above, double[] below, int k, double e) {
+        double best = above[k-1]+e;
+        byte step = -1;
+        if (above[k]+e < best) {
+            best = above[k]+e;
+            step = 0;
+        }
+        if (above[k+1]+e < best) {
+            best = above[k+1]+e;
+            step = 1;
+        }
 
-        int w = pic.width();
-        int h = pic.height();
+        below[k] = best;
+        return step;
+    }
 
-        Picture newPic = new Picture(w-1, h);
+    // Runs rows first..first+rows-1 of the search for columns [from, to): reads the row above
+    // the band from above and leaves the band's last row in below. Row first+t depends on
+    // columns up to rows-t away in the row above the band, so the chunk works on a private
+    // copy that starts rows columns wider on each side and narrows by one per row; the
+    // neighbours' columns it recomputes that way get no back-pointers written
+    private void band(double[] above, double[] below, int first, int rows, int from, int to,
+                      int w, int rowStep, int colStep) {
+        int lo = from-rows;
+        int n = to-from + 2*rows;
+        double[][] scratch = CHUNK_ROWS.get();
+        if (scratch[0].length < n) {
+            scratch[0] = new double[n];
+            scratch[1] = new double[n];
+        }
+        double[] cur = scratch[0];
+        double[] next = scratch[1];
 
-        for (int j = 0; j < h; j++) {
-            int row = 0;
-            for (int i = 0; i < w; i++) {
-                if (seam[j] != i) {
-                    newPic.set(row, j, pic.get(i, j));
-                    row++;
-                }
-            }
+        for (int k = 0; k < n; k++) {
+            int j = lo+k;
+            cur[k] = j >= 0 && j < w ? above[j+1] : Double.POSITIVE_INFINITY;
+        }
+        next[0] = next[n-1] = Double.POSITIVE_INFINITY;
+
+        for (int t = 0; t < rows; t++) {
+            int reach = rows-1-t;
+            int left = Math.max(from-reach, 0);
+            int right = Math.min(to+reach, w);
+
+            relaxRow(cur, next, lo, first+t, left, from, false, w, rowStep, colStep);
+            relaxRow(cur, next, lo, first+t, from, to, true, w, rowStep, colStep);
+            relaxRow(cur, next, lo, first+t, to, right, false, w, rowStep, colStep);
+            // outside the picture
+            for (int j = from-reach; j < left; j++) next[j-lo] = Double.POSITIVE_INFINITY;
+            for (int j = right; j < to+reach; j++) next[j-lo] = Double.POSITIVE_INFINITY;
+
+            double[] swap = cur;
+            cur = next;
+            next = swap;
         }
-        pic = newPic;
 
-        if (isTraspose) removeHorizontalEnergy(seam);
-        else removeVerticalEnergy(seam);
+        System.arraycopy(cur, from-lo, below, from+1, to-from);
     }
 
-    private boolean isValidPixel(int x, int y) {
-        return x >= 0 && x < pic.width() && y >= 0 && y < pic.height();
+    // Shrinks the picture to width x height by removing vertical seams and then horizontal
+    // ones, with the same result as calling findVerticalSeam() and removeVerticalSeam() (and
+    // then the horizontal pair) once per seam. The seam search keeps the distance and
+    // back-pointer of every pixel between seams, so after a removal only the cells whose
+    // distance can have changed are relaxed again: the neighbourhood of the removed seam and,
+    // row by row, the cells next to a distance that did change.
+    public void resizeTo(int width, int height) {
+        carveTo(width, height);
     }
 
-    private boolean isValidVerticalSeam(int[] seam) {
-        if (seam == null || seam.length != pic.height()) return false;
+    // resizeTo(), returning the seams removed in order: the vertical ones, then the horizontal
+    int[][] carveTo(int width, int height) {
 
-        for (int i = 1; i < seam.length; i++) {
-            if (Math.abs(seam[i]-seam[i-1]) > 1) return false;
+        if (width < 1 || width > this.width || height < 1 || height > this.height) {
+            throw new IllegalArgumentException("Invalid size, width: "+width+" height: "+height);
         }
 
-        return true;
+        int[][] seams = new int[this.width-width + this.height-height][];
+        if (seams.length == 0) return seams;
+
+        // both indexed like the pixels
+        double[] distTo = new double[rgb.length];
+        byte[] edges = new byte[rgb.length];
+        // the columns that changed in the previous row and in the current one
+        int[] changed = new int[Math.max(this.width, this.height)];
+        int[] next = new int[changed.length];
+
+        int vertical = this.width-width;
+        carve(true, seams, 0, vertical, distTo, edges, changed, next);
+        carve(false, seams, vertical, seams.length, distTo, edges, changed, next);
+        return seams;
     }
 
-    private void removeVerticalEnergy(int[] seam) {
-        int w = energy.length;
-        int h = energy[0].length;
-        double[][] newEnergy = new double[w-1][h];
+    // removes seams [from, to) of one orientation, recording them in seams
+    private void carve(boolean vertical, int[][] seams, int from, int to, double[] distTo, byte[] edges, int[] changed, int[] next) {
+        int[] seam = null;
 
-        for (int j = 0; j < h; j++) {
-            int col = 0;
-            for (int i = 0; i < w; i++) {
-                if (i != seam[j]) {
-                    newEnergy[col][j] = energy[i][j];
-                    col++;
-                }
-            }
+        for (int k = from; k < to; k++) {
+            if (seam == null) relax(vertical, distTo, edges);
+            else relax(vertical, seam, distTo, edges, changed, next);
+            seam = trace(vertical, distTo, edges);
+            seams[k] = seam;
 
-            if (isTraspose) {
-                int left = seam[j]-1;
-                if (left >= 0) newEnergy[left][j] = energy(j, left);
-                if (seam[j] < newEnergy.length) newEnergy[seam[j]][j] = energy(j, seam[j]);
+            if (vertical) {
+                removeFromRows(distTo, rowStride, height, width, seam);
+                removeFromRows(edges, rowStride, height, width, seam);
+                removeVerticalSeam(seam);
             }
             else {
-                int left = seam[j]-1;
-                if (left >= 0) newEnergy[left][j] = energy(left, j);
-                if (seam[j] < newEnergy.length) newEnergy[seam[j]][j] = energy(seam[j], j);
+                removeFromColumns(distTo, rowStride, height, width, seam);
+                removeFromColumns(edges, rowStride, height, width, seam);
+                removeHorizontalSeam(seam);
             }
         }
+    }
+
+    // the full seam search, keeping every row
+    private void relax(boolean vertical, double[] distTo, byte[] edges) {
+        int h = vertical ? height : width;
+        int w = vertical ? width : height;
+        int rowStep = vertical ? rowStride : 1;
+        int colStep = vertical ? 1 : rowStride;
 
-        energy = newEnergy;
+        for (int j = 0; j < w; j++) distTo[j*colStep] = 0;
+
+        for (int i = 1; i < h; i++) {
+            for (int j = 0; j < w; j++) relax(distTo, edges, i*rowStep, j, w, rowStep, colStep);
+        }
     }
 
-    private void removeHorizontalEnergy(int[] seam) {
-        int w = energy.length;
-        int h = energy[0].length;
-        double[][] newEnergy = new double[w][h-1];
+    // Brings distTo and edges up to date after seam was removed; they hold the search from
+    // before the removal, already shifted like the pixels. A cell has to be relaxed again if
+    // its energy or its parents changed, which only happens between the seam's column in its
+    // row and in the row above, or if one of its parents' distance changed. The changed cells
+    // of each row are collected in column order, so the candidates of the next row can be
+    // visited in column order too, each once.
+    private void relax(boolean vertical, int[] seam, double[] distTo, byte[] edges, int[] changed, int[] next) {
+        int h = vertical ? height : width;
+        int w = vertical ? width : height;
+        int rowStep = vertical ? rowStride : 1;
+        int colStep = vertical ? 1 : rowStride;
+
+        // the first row always has distance 0
+        int count = 0;
 
-        for (int i = 0; i < w; i++) {
-            int row = 0;
-            for (int j = 0; j < h; j++) {
-                if (j != seam[i]) {
-                    newEnergy[i][row] = energy[i][j];
-                    row++;
+        for (int i = 1; i < h; i++) {
+            int near = Math.min(seam[i-1], seam[i])-1;
+            int far = Math.max(seam[i-1], seam[i]);
+            boolean nearSeam = true;
+            int found = 0;
+            // columns below this one have been visited already
+            int j = 0;
+
+            for (int k = 0; k < count || nearSeam; ) {
+                int from, to;
+                if (nearSeam && (k == count || near <= changed[k]-1)) {
+                    from = near;
+                    to = far;
+                    nearSeam = false;
+                }
+                else {
+                    from = changed[k]-1;
+                    to = changed[k]+1;
+                    k++;
                 }
-            }
 
-            if (isTraspose) {
-                int top = seam[i]-1;
-                if (top >= 0) newEnergy[i][top] = energy(top, i);
-                if (seam[i] < newEnergy[0].length) newEnergy[i][seam[i]] = energy(seam[i], i);
+                for (int c = Math.max(from, j); c <= Math.min(to, w-1); c++) {
+                    if (relax(distTo, edges, i*rowStep, c, w, rowStep, colStep)) next[found++] = c;
+                }
+                j = Math.max(j, to+1);
             }
-            else {
-                int top = seam[i]-1;
-                if (top >= 0) newEnergy[i][top] = energy(i, top);
-                if (seam[i] < newEnergy[0].length) newEnergy[i][seam[i]] = energy(i, seam[i]);
+
+            int[] swap = changed;
+            changed = next;
+            next = swap;
+            count = found;
+        }
+    }
+
+    // relaxes cell (row, j) from the three cells above it like findSeam() does, with the same
+    // tie-breaking, and tells whether its distance changed
+    private boolean relax(double[] distTo, byte[] edges, int row, int j, int w, int rowStep, int colStep) {
+        int at = row + j*colStep;
+        int above = at-rowStep;
+        double e = energy[at];
+
+        double best = j > 0 ? distTo[above-colStep]+e : Double.POSITIVE_INFINITY;
+        byte step = -1;
+        if (distTo[above]+e < best) {
+            best = distTo[above]+e;
+            step = 0;
+        }
+        if (j+1 < w && distTo[above+colStep]+e < best) {
+            best = distTo[above+colStep]+e;
+            step = 1;
+        }
+
+        edges[at] = step;
+        if (best == distTo[at]) return false;
+        distTo[at] = best;
+        return true;
+    }
+
+    // the seam ending at the leftmost cheapest cell of the last row
+    private int[] trace(boolean vertical, double[] distTo, byte[] edges) {
+        int h = vertical ? height : width;
+        int w = vertical ? width : height;
+        int rowStep = vertical ? rowStride : 1;
+        int colStep = vertical ? 1 : rowStride;
+
+        int last = (h-1)*rowStep;
+        int minCol = 0;
+        for (int j = 1; j < w; j++) {
+            if (distTo[last + j*colStep] < distTo[last + minCol*colStep]) minCol = j;
+        }
+
+        int[] out = new int[h];
+        out[h-1] = minCol;
+        for (int i = h-1; i > 0; i--) {
+            out[i-1] = out[i] + edges[i*rowStep + out[i]*colStep];
+        }
+
+        return out;
+    }
+
+    public void removeHorizontalSeam(int[] seam) {
+
+        if (height <= 1) throw new IllegalArgumentException("width is less than or equal to 1");
+        if (!isValidHorizontalSeam(seam, width, height)) throw new IllegalArgumentException("Invalid seam");
+
+        // each column loses one pixel; the pixels below it move up one row
+        removeFromColumns(rgb, rowStride, height, width, seam);
+        removeFromColumns(energy, rowStride, height, width, seam);
+
+        height--;
+        pic = null;
+
+        // only the pixels next to the seam see different neighbours
+        for (int i = 0; i < width; i++) {
+            int top = seam[i]-1;
+            if (top >= 0) energy[top*rowStride + i] = energy(i, top);
+            if (seam[i] < height) energy[seam[i]*rowStride + i] = energy(i, seam[i]);
+        }
+    }
+
+    public void removeVerticalSeam(int[] seam) {
+
+        if (width <= 1) throw new IllegalArgumentException("Height is less than or equal to 1");
+        if (!isValidVerticalSeam(seam, width, height)) throw new IllegalArgumentException("Invalid seam");
+
+        // each row loses one pixel; the pixels right of it move left one column
+        removeFromRows(rgb, rowStride, height, width, seam);
+        removeFromRows(energy, rowStride, height, width, seam);
+
+        width--;
+        pic = null;
+
+        for (int j = 0; j < height; j++) {
+            int left = seam[j]-1;
+            if (left >= 0) energy[j*rowStride + left] = energy(left, j);
+            if (seam[j] < width) energy[j*rowStride + seam[j]] = energy(seam[j], j);
+        }
+    }
+
+    // removes element seam[r] from each row r of a rows x cols matrix stored with the given
+    // stride, shifting the rest of the row left. buffer is an int[] or a double[]
+    private static void removeFromRows(Object buffer, int stride, int rows, int cols, int[] seam) {
+        for (int r = 0; r < rows; r++) {
+            int from = r*stride + seam[r];
+            System.arraycopy(buffer, from+1, buffer, from, cols-seam[r]-1);
+        }
+    }
+
+    // removes element seam[c] from each column c, shifting the rest of the column up. This
+    // goes row by row so that every copy is a contiguous run of columns whose seam entry is
+    // above the row; rows above the highest seam entry don't move at all
+    private static void removeFromColumns(Object buffer, int stride, int rows, int cols, int[] seam) {
+        int first = rows;
+        for (int c = 0; c < cols; c++) first = Math.min(first, seam[c]);
+
+        for (int r = first; r < rows-1; r++) {
+            int c = 0;
+            while (c < cols) {
+                if (seam[c] > r) {
+                    c++;
+                    continue;
+                }
+                int start = c;
+                while (c < cols && seam[c] <= r) c++;
+                System.arraycopy(buffer, (r+1)*stride + start, buffer, r*stride + start, c-start);
             }
         }
+    }
 
-        energy = newEnergy;
+    private boolean isValidPixel(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 
-    private boolean isValidHorizontalSeam(int[] seam) {
-        if (seam == null || seam.length != pic.width()) return false;
+    // whether seam is a vertical seam of a width x height picture
+    static boolean isValidVerticalSeam(int[] seam, int width, int height) {
+        if (seam == null || seam.length != height) return false;
 
-        for (int i = 1; i < seam.length; i++) {
-            if (Math.abs(seam[i]-seam[i-1]) > 1) return false;
+        for (int i = 0; i < seam.length; i++) {
+            if (seam[i] < 0 || seam[i] >= width) return false;
+            if (i > 0 && Math.abs(seam[i]-seam[i-1]) > 1) return false;
         }
 
         return true;
     }
 
-    private void transpose() {
-        int h = energy.length;
-        int w = energy[0].length;
-        double[][] transMatrix = new double[w][h];
+    // whether seam is a horizontal seam of a width x height picture
+    static boolean isValidHorizontalSeam(int[] seam, int width, int height) {
+        if (seam == null || seam.length != width) return false;
 
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                transMatrix[i][j] = energy[j][i];
-            }
+        for (int i = 0; i < seam.length; i++) {
+            if (seam[i] < 0 || seam[i] >= height) return false;
+            if (i > 0 && Math.abs(seam[i]-seam[i-1]) > 1) return false;
         }
 
-        energy = transMatrix;
-        isTraspose = !isTraspose;
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+// The inner loops of SeamCarver over contiguous runs of pixels, for implementations that
+// process several pixels per instruction. Every implementation has to produce exactly what
+// SeamCarver's own scalar loops do, bit for bit, so a picture carves the same either way.
+//
+// The vector implementation uses the incubating jdk.incubator.vector module, which the JVM
+// only loads when started with --add-modules jdk.incubator.vector. It is therefore loaded by
+// name: without the module, SeamCarver keeps its scalar loops.
+interface SeamKernels {
+
+    // energies of pixels rgb[at+from..at+to) of one row into the same positions of energy.
+    // stride is the distance between rows, and none of the pixels is on the picture's border
+    void energy(int[] rgb, int at, int stride, int from, int to, double[] energy);
+
+    // relaxes n cells of a row in the seam search: cell t gets energy[e+t] plus the cheapest
+    // of above[k+t-1], above[k+t] and above[k+t+1] (the leftmost on ties) into below[k+t],
+    // and the step to that parent (-1, 0 or +1) into edgeTo[edge+t] unless edgeTo is null
+    void relax(double[] above, double[] below, int k, double[] energy, int e, byte[] edgeTo, int edge, int n);
+
+    // cells processed per instruction
+    int lanes();
+
+    // the vector kernels, or null when they are unavailable or turned off. The system property
+    // seamcarver.kernels chooses: "scalar" turns them off, "vector" fails if they can't be
+    // loaded, and anything else uses them when the JVM supports vectors of at least 4 doubles
+    // (with 2 they measured slower than the scalar loops)
+    static SeamKernels load() {
+        String choice = System.getProperty("seamcarver.kernels", "auto");
+        if (choice.equals("scalar")) return null;
+
+        try {
+            SeamKernels kernels = (SeamKernels) Class.forName("VectorSeamKernels").getDeclaredConstructor().newInstance();
+            return kernels.lanes() >= 4 || choice.equals("vector") ? kernels : null;
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            if (choice.equals("vector")) throw new IllegalStateException("vector kernels unavailable; run with --add-modules jdk.incubator.vector", e);
+            return null;
+        }
+    }
+}
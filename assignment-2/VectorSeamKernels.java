@@ -0,0 +1,85 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// SeamKernels on the Vector API, one vector of doubles at a time. The energy kernel reads the
+// same number of packed pixels as there are double lanes, so the integer gradients convert to
+// doubles lane for lane. The tail of each run that doesn't fill a vector goes through scalar
+// code. Integer-to-double conversion, addition and square root are exact or correctly rounded
+// in both, so the results match SeamCarver's scalar loops exactly.
+final class VectorSeamKernels implements SeamKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize()/2));
+    private static final int LANES = DOUBLES.length();
+    private static final DoubleVector MINUS = DoubleVector.broadcast(DOUBLES, -1);
+    // where relax() narrows the steps of one vector, per thread since the parallel search
+    // relaxes rows on several at once
+    private static final ThreadLocal<double[]> STEPS = ThreadLocal.withInitial(() -> new double[LANES]);
+
+    @Override
+    public int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public void energy(int[] rgb, int at, int stride, int from, int to, double[] energy) {
+        int x = from;
+
+        for (; x <= to-LANES; x += LANES) {
+            int i = at+x;
+            IntVector sum = gradient(IntVector.fromArray(INTS, rgb, i-1), IntVector.fromArray(INTS, rgb, i+1))
+                    .add(gradient(IntVector.fromArray(INTS, rgb, i-stride), IntVector.fromArray(INTS, rgb, i+stride)));
+            DoubleVector d = (DoubleVector) sum.convertShape(VectorOperators.I2D, DOUBLES, 0);
+            d.lanewise(VectorOperators.SQRT).intoArray(energy, i);
+        }
+
+        for (; x < to; x++) {
+            int i = at+x;
+            energy[i] = Math.sqrt(SeamCarver.gradient(rgb[i-1], rgb[i+1]) + SeamCarver.gradient(rgb[i-stride], rgb[i+stride]));
+        }
+    }
+
+    @Override
+    public void relax(double[] above, double[] below, int k, double[] energy, int e, byte[] edgeTo, int edge, int n) {
+        int t = 0;
+        double[] steps = edgeTo != null ? STEPS.get() : null;
+
+        for (; t <= n-LANES; t += LANES) {
+            DoubleVector cost = DoubleVector.fromArray(DOUBLES, energy, e+t);
+            DoubleVector left = DoubleVector.fromArray(DOUBLES, above, k+t-1).add(cost);
+            DoubleVector up = DoubleVector.fromArray(DOUBLES, above, k+t).add(cost);
+            DoubleVector right = DoubleVector.fromArray(DOUBLES, above, k+t+1).add(cost);
+
+            VectorMask<Double> toUp = up.lt(left);
+            DoubleVector best = left.blend(up, toUp);
+            VectorMask<Double> toRight = right.lt(best);
+            best.blend(right, toRight).intoArray(below, k+t);
+
+            if (edgeTo != null) {
+                // there is no cheap way from a mask of doubles to bytes, so the steps go out as
+                // doubles and are narrowed one by one
+                MINUS.blend(0, toUp).blend(1, toRight).intoArray(steps, 0);
+                for (int l = 0; l < LANES; l++) edgeTo[edge+t+l] = (byte) steps[l];
+            }
+        }
+
+        for (; t < n; t++) {
+            byte step = SeamCarver.relaxCell(above, below, k+t, energy[e+t]);
+            if (edgeTo != null) edgeTo[edge+t] = step;
+        }
+    }
+
+    // SeamCarver's squared colour difference, lane by lane
+    private static IntVector gradient(IntVector a, IntVector b) {
+        IntVector r = a.lanewise(VectorOperators.LSHR, 16).and(0xff).sub(b.lanewise(VectorOperators.LSHR, 16).and(0xff));
+        IntVector g = a.lanewise(VectorOperators.LSHR, 8).and(0xff).sub(b.lanewise(VectorOperators.LSHR, 8).and(0xff));
+        IntVector bl = a.and(0xff).sub(b.and(0xff));
+
+        return r.mul(r).add(g.mul(g)).add(bl.mul(bl));
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// BoggleSolver.getAllValidWords() on a synthetic board against a dictionary that shares many
+// words with it: a 4x4 board up to a 20x20 one with a dictionary the size of yawl.txt
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoggleSolverBenchmark {
+
+    private static final MethodHandle NEW_SOLVER = Solvers.constructor("BoggleSolver", String[].class);
+    private static final MethodHandle NEW_BOARD = Solvers.constructor("BoggleBoard", char[][].class);
+    private static final MethodHandle ALL_VALID_WORDS = Solvers.method("BoggleSolver", "getAllValidWords", Iterable.class, Solvers.type("BoggleBoard"));
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Object solver;
+    private Object board;
+
+    @Setup
+    public void setup() throws Throwable {
+        int side = Inputs.pick(this.size, 4, 8, 20);
+        int words = Inputs.pick(this.size, 10_000, 100_000, 264_061);
+        char[][] letters = Inputs.board(side, side, 1);
+
+        this.solver = (Object) NEW_SOLVER.invokeExact((Object) Inputs.dictionary(letters, words, 2));
+        this.board = (Object) NEW_BOARD.invokeExact((Object) letters);
+    }
+
+    @Benchmark
+    public Object getAllValidWords() throws Throwable {
+        return (Object) ALL_VALID_WORDS.invokeExact(this.solver, this.board);
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// BaseballElimination.isEliminated() for each team of a synthetic division in turn
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BaseballEliminationBenchmark {
+
+    private static final MethodHandle NEW_DIVISION = Solvers.constructor("BaseballElimination", String.class);
+    private static final MethodHandle TEAMS = Solvers.method("BaseballElimination", "teams", Iterable.class);
+    private static final MethodHandle IS_ELIMINATED = Solvers.method("BaseballElimination", "isEliminated", boolean.class, String.class);
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Object division;
+    private String[] teams;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Throwable {
+        int teams = Inputs.pick(this.size, 5, 30, 120);
+        this.division = (Object) NEW_DIVISION.invokeExact((Object) Inputs.baseball(teams, 1).toString());
+
+        List<String> names = new ArrayList<>();
+        for (String team: (Iterable<String>) (Object) TEAMS.invokeExact(this.division)) names.add(team);
+        this.teams = names.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public boolean isEliminated() throws Throwable {
+        String team = this.teams[this.next++ % this.teams.length];
+        return (boolean) IS_ELIMINATED.invokeExact(this.division, (Object) team);
+    }
+}
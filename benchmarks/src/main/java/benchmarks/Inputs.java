@@ -0,0 +1,216 @@
+package benchmarks;
+
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.Picture;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Synthetic inputs for the benchmarks. Inputs that the solvers read from files are written to a
+// temporary directory, so no data files are checked in. Every generator is seeded, so a given
+// size always produces the same input and runs stay comparable.
+final class Inputs {
+
+    // letters drawn in roughly the proportions of English text
+    private static final String LETTERS = "EEEEEEEEEEEETTTTTTTTTAAAAAAAAOOOOOOOIIIIIIINNNNNNNSSSSSSRRRRRRHHHHHDDDDLLLLUUUCCCMMMFFYYWWGGPPBBVKXQJZ";
+
+    private static Path directory;
+
+    private Inputs() { }
+
+    // the value for a @Param size of "small", "medium" or "large"
+    static int pick(String size, int small, int medium, int large) {
+        switch (size) {
+            case "small": return small;
+            case "medium": return medium;
+            case "large": return large;
+            default: throw new IllegalArgumentException("unknown size " + size);
+        }
+    }
+
+    // WordNet files with the given number of synsets: synset 0 is the root and every other synset
+    // has a random hypernym among the synsets before it (a few have two), which gives the
+    // logarithmic depth of a real hypernym tree. Synsets name one to three nouns, and about a
+    // third of the nouns reappear in several synsets, like polysemous words do.
+    // Returns the synsets file and the hypernyms file
+    static Path[] wordNet(int synsets, long seed) {
+        Random random = new Random(seed);
+        Path synsetsFile = file("synsets-" + synsets + "-" + seed + ".txt");
+        Path hypernymsFile = file("hypernyms-" + synsets + "-" + seed + ".txt");
+
+        try (PrintWriter s = writer(synsetsFile); PrintWriter h = writer(hypernymsFile)) {
+            int nouns = 0;
+            for (int id = 0; id < synsets; id++) {
+                Set<String> names = new LinkedHashSet<>();
+                int count = 1 + random.nextInt(3);
+                for (int k = 0; k < count; k++) {
+                    boolean reuse = nouns > 0 && random.nextInt(3) == 0;
+                    names.add("noun_" + (reuse ? random.nextInt(nouns) : nouns++));
+                }
+                s.println(id + "," + String.join(" ", names) + ",synthetic gloss of synset " + id);
+
+                if (id == 0) continue;
+                int hypernym = random.nextInt(id);
+                h.print(id + "," + hypernym);
+                int second = random.nextInt(id);
+                if (random.nextInt(50) == 0 && second != hypernym) h.print("," + second);
+                h.println();
+            }
+        }
+        return new Path[] {synsetsFile, hypernymsFile};
+    }
+
+    // the hypernym graph of a file written by wordNet()
+    static Digraph hypernyms(Path hypernymsFile, int synsets) {
+        Digraph G = new Digraph(synsets);
+        try {
+            for (String line: Files.readAllLines(hypernymsFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                int v = Integer.parseInt(fields[0]);
+                for (int i = 1; i < fields.length; i++) G.addEdge(v, Integer.parseInt(fields[i]));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return G;
+    }
+
+    // smooth colour gradients with noise on top, so seams neither follow one flat region
+    // nor see uniform energy everywhere
+    static Picture picture(int width, int height, long seed) {
+        Random random = new Random(seed);
+        Picture picture = new Picture(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (int) (127 + 100*Math.sin(x/37.0) + random.nextInt(28));
+                int g = (int) (127 + 100*Math.cos(y/23.0) + random.nextInt(28));
+                int b = (int) (127 + 100*Math.sin((x+y)/51.0) + random.nextInt(28));
+                picture.set(x, y, new Color(r, g, b));
+            }
+        }
+        return picture;
+    }
+
+    // a division file for BaseballElimination with the given number of teams. Wins are spread
+    // so that some teams are trivially eliminated, some only by the max-flow argument, and
+    // some not at all
+    static Path baseball(int teams, long seed) {
+        Random random = new Random(seed);
+        int[][] against = new int[teams][teams];
+        for (int i = 0; i < teams; i++) {
+            for (int j = i+1; j < teams; j++) {
+                against[i][j] = random.nextInt(4);
+                against[j][i] = against[i][j];
+            }
+        }
+
+        Path file = file("teams-" + teams + "-" + seed + ".txt");
+        try (PrintWriter out = writer(file)) {
+            out.println(teams);
+            for (int i = 0; i < teams; i++) {
+                int remaining = 0;
+                for (int g: against[i]) remaining += g;
+                int wins = 60 + random.nextInt(30) + (i % 7 == 0 ? 25 : 0);
+                int losses = 162 - remaining - wins;
+
+                StringBuilder line = new StringBuilder("Team" + i + " " + wins + " " + Math.max(0, losses) + " " + remaining);
+                for (int g: against[i]) line.append(' ').append(g);
+                out.println(line);
+            }
+        }
+        return file;
+    }
+
+    // a Boggle board of random letters in English proportions
+    static char[][] board(int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        char[][] board = new char[rows][cols];
+        for (char[] row: board) {
+            for (int j = 0; j < cols; j++) row[j] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+        }
+        return board;
+    }
+
+    // a dictionary of uppercase words: half are random walks on board, so a real share of the
+    // dictionary is found, and half are random letter strings, most of which aren't. A Q on the
+    // board stands for QU, as BoggleBoard has it
+    static String[] dictionary(char[][] board, int words, long seed) {
+        Random random = new Random(seed);
+        int rows = board.length;
+        int cols = board[0].length;
+        Set<String> dictionary = new HashSet<>();
+
+        while (dictionary.size() < words) {
+            int length = 3 + random.nextInt(8);
+            StringBuilder word = new StringBuilder();
+
+            if (dictionary.size() % 2 == 0) {
+                boolean[][] used = new boolean[rows][cols];
+                int i = random.nextInt(rows);
+                int j = random.nextInt(cols);
+                while (word.length() < length) {
+                    used[i][j] = true;
+                    word.append(board[i][j]);
+                    if (board[i][j] == 'Q') word.append('U');
+
+                    List<int[]> next = new ArrayList<>();
+                    for (int di = -1; di <= 1; di++) {
+                        for (int dj = -1; dj <= 1; dj++) {
+                            int a = i+di;
+                            int b = j+dj;
+                            if (a >= 0 && a < rows && b >= 0 && b < cols && !used[a][b]) next.add(new int[] {a, b});
+                        }
+                    }
+                    if (next.isEmpty()) break;
+                    int[] step = next.get(random.nextInt(next.size()));
+                    i = step[0];
+                    j = step[1];
+                }
+            }
+            else {
+                while (word.length() < length) {
+                    char c = LETTERS.charAt(random.nextInt(LETTERS.length()));
+                    word.append(c);
+                    if (c == 'Q') word.append('U');
+                }
+            }
+            dictionary.add(word.toString());
+        }
+        return dictionary.toArray(new String[0]);
+    }
+
+    private static synchronized Path file(String name) {
+        try {
+            if (directory == null) {
+                directory = Files.createTempDirectory("algorithms-ii-benchmarks");
+                directory.toFile().deleteOnExit();
+            }
+            Path file = directory.resolve(name);
+            file.toFile().deleteOnExit();
+            return file;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PrintWriter writer(Path file) {
+        try {
+            return new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
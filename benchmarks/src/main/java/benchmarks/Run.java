@@ -0,0 +1,28 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Entry point of benchmarks.jar. Takes JMH's usual command line (a benchmark regexp, -p size=large,
+// -f, -wi, -rf json, ...) and always adds the GC profiler, so every run reports allocation
+// rates next to the throughput and the latency percentiles of the sample-time mode.
+public final class Run {
+
+    private Run() { }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+
+        Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+        Runner runner = new Runner(options);
+        if (commandLine.shouldList()) runner.list();
+        else runner.run();
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import edu.princeton.cs.algs4.Digraph;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SAP.length(v, w) on random vertex pairs of a synthetic hypernym graph
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SapBenchmark {
+
+    private static final MethodHandle NEW_SAP = Solvers.constructor("SAP", Digraph.class);
+    private static final MethodHandle LENGTH = Solvers.method("SAP", "length", int.class, int.class, int.class);
+
+    // a power of two, so the next pair is an AND away
+    private static final int PAIRS = 1 << 12;
+
+    // 82115 is the number of synsets in WordNet 3.0
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Object sap;
+    private final int[] v = new int[PAIRS];
+    private final int[] w = new int[PAIRS];
+    private int next;
+
+    @Setup
+    public void setup() throws Throwable {
+        int synsets = Inputs.pick(this.size, 1_000, 20_000, 82_115);
+        Path[] files = Inputs.wordNet(synsets, 1);
+        this.sap = (Object) NEW_SAP.invokeExact((Object) Inputs.hypernyms(files[1], synsets));
+
+        Random random = new Random(2);
+        for (int i = 0; i < PAIRS; i++) {
+            this.v[i] = random.nextInt(synsets);
+            this.w[i] = random.nextInt(synsets);
+        }
+    }
+
+    @Benchmark
+    public int length() throws Throwable {
+        int i = this.next++ & (PAIRS-1);
+        return (int) LENGTH.invokeExact(this.sap, this.v[i], this.w[i]);
+    }
+}
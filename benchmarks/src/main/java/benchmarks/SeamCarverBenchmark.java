@@ -0,0 +1,87 @@
+package benchmarks;
+
+import edu.princeton.cs.algs4.Picture;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SeamCarver.findVerticalSeam(), removeVerticalSeam() and resizeTo() on synthetic pictures up to 4K,
+// in serial and in parallel mode, and with the scalar or the Vector API kernels
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class SeamCarverBenchmark {
+
+    static final MethodHandle NEW_CARVER = Solvers.constructor("SeamCarver", Picture.class, boolean.class);
+    static final MethodHandle FIND_VERTICAL = Solvers.method("SeamCarver", "findVerticalSeam", int[].class);
+    static final MethodHandle REMOVE_VERTICAL = Solvers.method("SeamCarver", "removeVerticalSeam", void.class, int[].class);
+    static final MethodHandle RESIZE_TO = Solvers.method("SeamCarver", "resizeTo", void.class, int.class, int.class);
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    // SeamCarver reads seamcarver.kernels once, when the first carver is built in setup()
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    Picture picture;
+    private Object carver;
+    int[] seam;
+
+    @Setup
+    public void setup() throws Throwable {
+        System.setProperty("seamcarver.kernels", this.kernels);
+        int width = Inputs.pick(this.size, 320, 1280, 3840);
+        int height = Inputs.pick(this.size, 240, 720, 2160);
+        this.picture = Inputs.picture(width, height, 1);
+        this.carver = (Object) NEW_CARVER.invokeExact((Object) this.picture, this.parallel);
+        this.seam = (int[]) (Object) FIND_VERTICAL.invokeExact(this.carver);
+    }
+
+    @Benchmark
+    public Object findVerticalSeam() throws Throwable {
+        return (Object) FIND_VERTICAL.invokeExact(this.carver);
+    }
+
+    // removing a seam changes the carver, so every call gets a fresh one; building it
+    // (including the initial energy computation) isn't timed
+    @Benchmark
+    public Object removeVerticalSeam(Fresh fresh) throws Throwable {
+        REMOVE_VERTICAL.invokeExact(fresh.carver, (Object) this.seam);
+        return fresh.carver;
+    }
+
+    // 30% narrower in one call
+    @Benchmark
+    public Object resizeTo(Fresh fresh) throws Throwable {
+        RESIZE_TO.invokeExact(fresh.carver, this.picture.width()*7/10, this.picture.height());
+        return fresh.carver;
+    }
+
+    @State(Scope.Thread)
+    public static class Fresh {
+        Object carver;
+
+        @Setup(Level.Invocation)
+        public void setup(SeamCarverBenchmark benchmark) throws Throwable {
+            this.carver = (Object) NEW_CARVER.invokeExact((Object) benchmark.picture, benchmark.parallel);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Typed handles on the solvers' constructors and methods.
+//
+// The solvers are in the default package, which code in a named package can't import, and JMH
+// doesn't generate benchmarks for classes in the default package. The benchmarks reach them
+// through method handles instead, with every reference type erased to Object. Held in static
+// final fields, invokeExact() calls on them are inlined by the JIT like direct calls.
+final class Solvers {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Solvers() { }
+
+    // loaded but not initialized, so a benchmark's setup can still set the system properties a
+    // solver reads in its static initializer
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name, false, Solvers.class.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalStateException(name + " is not on the class path", e);
+        }
+    }
+
+    // new owner(parameters...), returning Object
+    static MethodHandle constructor(String owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(type(owner), MethodType.methodType(void.class, parameters));
+            return handle.asType(handle.type().erase());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no public constructor " + owner + signature(parameters), e);
+        }
+    }
+
+    // receiver.name(parameters...), with the receiver passed as an Object
+    static MethodHandle method(String owner, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(type(owner), name, MethodType.methodType(returns, parameters));
+            return handle.asType(handle.type().erase());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no public method " + owner + "." + name + signature(parameters), e);
+        }
+    }
+
+    private static String signature(Class<?>[] parameters) {
+        StringBuilder s = new StringBuilder("(");
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) s.append(", ");
+            s.append(parameters[i].getSimpleName());
+        }
+        return s.append(')').toString();
+    }
+}
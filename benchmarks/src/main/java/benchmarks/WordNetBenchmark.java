@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// WordNet.distance() on random noun pairs, and Outcast.outcast() on random noun sets of the
+// sizes used by the assignment's outcast files
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordNetBenchmark {
+
+    private static final Class<?> WORDNET = Solvers.type("WordNet");
+    private static final MethodHandle NEW_WORDNET = Solvers.constructor("WordNet", String.class, String.class);
+    private static final MethodHandle NOUNS = Solvers.method("WordNet", "nouns", Iterable.class);
+    private static final MethodHandle DISTANCE = Solvers.method("WordNet", "distance", int.class, String.class, String.class);
+    private static final MethodHandle NEW_OUTCAST = Solvers.constructor("Outcast", WORDNET);
+    private static final MethodHandle OUTCAST = Solvers.method("Outcast", "outcast", String.class, String[].class);
+
+    private static final int PAIRS = 1 << 12;
+    private static final int SETS = 1 << 8;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Object wordNet;
+    private Object outcast;
+    private final String[] a = new String[PAIRS];
+    private final String[] b = new String[PAIRS];
+    private final String[][] sets = new String[SETS][];
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Throwable {
+        int synsets = Inputs.pick(this.size, 1_000, 20_000, 82_115);
+        Path[] files = Inputs.wordNet(synsets, 1);
+        this.wordNet = (Object) NEW_WORDNET.invokeExact((Object) files[0].toString(), (Object) files[1].toString());
+        this.outcast = (Object) NEW_OUTCAST.invokeExact(this.wordNet);
+
+        List<String> nouns = new ArrayList<>();
+        for (String noun: (Iterable<String>) (Object) NOUNS.invokeExact(this.wordNet)) nouns.add(noun);
+
+        Random random = new Random(2);
+        for (int i = 0; i < PAIRS; i++) {
+            this.a[i] = nouns.get(random.nextInt(nouns.size()));
+            this.b[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+        for (int i = 0; i < SETS; i++) {
+            this.sets[i] = new String[5 + random.nextInt(8)];
+            for (int j = 0; j < this.sets[i].length; j++) this.sets[i][j] = nouns.get(random.nextInt(nouns.size()));
+        }
+    }
+
+    @Benchmark
+    public int distance() throws Throwable {
+        int i = this.next++ & (PAIRS-1);
+        return (int) DISTANCE.invokeExact(this.wordNet, (Object) this.a[i], (Object) this.b[i]);
+    }
+
+    @Benchmark
+    public Object outcast() throws Throwable {
+        int i = this.next++ & (SETS-1);
+        return (Object) OUTCAST.invokeExact(this.outcast, (Object) this.sets[i]);
+    }
+}